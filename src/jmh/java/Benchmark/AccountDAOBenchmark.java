@@ -0,0 +1,51 @@
+package Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+
+/**
+ * Measures the login lookup, AccountDAO.getAccountByUsername, against several account counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class AccountDAOBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int accountCount;
+
+    private AccountDAO accountDAO;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkDatabase.seed(accountCount, 0);
+        accountDAO = new AccountDAO();
+    }
+
+    @Benchmark
+    public Object getAccountByUsername() {
+        return accountDAO.getAccountByUsername("user" + (1 + ThreadLocalRandom.current().nextInt(accountCount)));
+    }
+
+    @Benchmark
+    public Object getAccountByUsernameMissing() {
+        return accountDAO.getAccountByUsername("nobody" + ThreadLocalRandom.current().nextInt(accountCount));
+    }
+}
@@ -0,0 +1,63 @@
+package Benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import Util.ConnectionUtil;
+
+/**
+ * The BenchmarkDatabase class seeds the benchmark database with a known dataset. Benchmarks run against
+ * ./h2/bench (see the bench profile in pom.xml), never against the application database.
+ */
+public final class BenchmarkDatabase {
+    /**
+     * JVM argument pointing ConnectionUtil at the benchmark database, for @Fork(jvmArgsAppend = ...).
+     */
+    public static final String DB_URL_ARG = "-Ddb.url=jdbc:h2:./h2/bench;";
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Recreates the schema and inserts accounts named user1..userN and messages spread evenly across them.
+     * SocialMedia.sql's own seed rows (testuser1 and one message) are kept, so account and message ids
+     * 1..accounts+1 and 1..messages+1 all exist afterwards.
+     *
+     * @param accounts the number of accounts to add
+     * @param messages the number of messages to add
+     */
+    public static void seed(int accounts, int messages) {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            PreparedStatement accountInsert = connection.prepareStatement(
+                    "INSERT INTO account (username, password) VALUES (?, ?)");
+            for (int i = 1; i <= accounts; i++) {
+                accountInsert.setString(1, "user" + i);
+                accountInsert.setString(2, "password" + i);
+                accountInsert.addBatch();
+                if (i % 1000 == 0) {
+                    accountInsert.executeBatch();
+                }
+            }
+            accountInsert.executeBatch();
+
+            PreparedStatement messageInsert = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)");
+            for (int i = 1; i <= messages; i++) {
+                messageInsert.setInt(1, 1 + i % (accounts + 1));
+                messageInsert.setString(2, "benchmark message " + i);
+                messageInsert.setLong(3, 1669947792L + i);
+                messageInsert.addBatch();
+                if (i % 1000 == 0) {
+                    messageInsert.executeBatch();
+                }
+            }
+            messageInsert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not seed the benchmark database", e);
+        }
+    }
+}
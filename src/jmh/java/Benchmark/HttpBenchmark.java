@@ -0,0 +1,111 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Measures whole requests through Javalin, the controller, the services and H2, on an in-process server.
+ * Run with -t to add client threads, e.g. -Djmh.args="HttpBenchmark -t 256", and compare the
+ * virtualThreads=false (Jetty platform thread pool) and virtualThreads=true rows at high concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class HttpBenchmark {
+    private static final int PORT = 8181;
+    private static final int ACCOUNTS = 100;
+
+    @Param({"1000", "100000"})
+    public int messageCount;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private Javalin app;
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void start() {
+        BenchmarkDatabase.seed(ACCOUNTS, messageCount);
+        System.setProperty("server.virtualThreads", String.valueOf(virtualThreads));
+        app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        client = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + " for " + request);
+        }
+        return response;
+    }
+
+    @Benchmark
+    public Object getMessageById() throws IOException, InterruptedException {
+        int messageId = 1 + ThreadLocalRandom.current().nextInt(messageCount);
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/messages/" + messageId))
+                .build());
+    }
+
+    @Benchmark
+    public Object getMessagesByUserIdPage() throws IOException, InterruptedException {
+        int accountId = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS + 1);
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/accounts/" + accountId + "/messages?limit=20"))
+                .build());
+    }
+
+    @Benchmark
+    public Object createMessage() throws IOException, InterruptedException {
+        int accountId = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS + 1);
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":" + accountId
+                        + ",\"message_text\":\"posted by benchmark\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build());
+    }
+
+    @Benchmark
+    public Object login() throws IOException, InterruptedException {
+        int user = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"user" + user
+                        + "\",\"password\":\"password" + user + "\"}"))
+                .header("Content-Type", "application/json")
+                .build());
+    }
+}
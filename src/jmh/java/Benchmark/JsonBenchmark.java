@@ -0,0 +1,76 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.ModelJsonMapper;
+
+/**
+ * Measures Jackson serialization and deserialization of a single Model.Message with the default ObjectMapper,
+ * which is what Javalin used for ctx.json and ctx.bodyAsClass, against the API's ModelJsonMapper.
+ *
+ * Run with "-prof gc" to compare allocations per response (gc.alloc.rate.norm): ctxJsonDefault builds the
+ * String and byte[] that ctx.json did, writeToStream is the controller's respondJson path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+    private ObjectMapper objectMapper;
+    private ModelJsonMapper modelJsonMapper;
+    private final OutputStream sink = OutputStream.nullOutputStream();
+    private Message message;
+    private byte[] messageJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        modelJsonMapper = new ModelJsonMapper(new ObjectMapper());
+        message = new Message(42, 7, "a typical message of a few dozen characters", 1669947792L);
+        messageJson = objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeMessage() throws IOException {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message deserializeMessage() throws IOException {
+        return objectMapper.readValue(messageJson, Message.class);
+    }
+
+    @Benchmark
+    public byte[] ctxJsonDefault() throws IOException {
+        return objectMapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void writeToStream() throws IOException {
+        modelJsonMapper.writeTo(sink, message, Message.class);
+    }
+
+    @Benchmark
+    public Message deserializeMessageCachedReader() throws IOException {
+        return modelJsonMapper.readerFor(Message.class).readValue(messageJson);
+    }
+}
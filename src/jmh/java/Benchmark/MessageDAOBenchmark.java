@@ -0,0 +1,96 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import DAO.MessageStore;
+import DAO.StorageEngine;
+import Model.Message;
+
+/**
+ * Measures the MessageStore CRUD paths of each storage engine against datasets of several sizes. The jdbc
+ * engine is the MessageDAO; the memory engine is loaded from the same seeded database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class MessageDAOBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int messageCount;
+
+    @Param({"jdbc", "memory"})
+    public String engine;
+
+    private static final int ACCOUNTS = 100;
+
+    private MessageStore messageDAO;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        BenchmarkDatabase.seed(ACCOUNTS, messageCount);
+        StorageEngine storage = StorageEngine.create(engine, null);
+        storage.open();
+        messageDAO = storage.getMessageStore();
+    }
+
+    private int randomMessageId() {
+        return 1 + ThreadLocalRandom.current().nextInt(messageCount);
+    }
+
+    private int randomAccountId() {
+        return 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS + 1);
+    }
+
+    @Benchmark
+    public Object getMessageById() {
+        return messageDAO.getMessageById(randomMessageId());
+    }
+
+    @Benchmark
+    public Object getMessagesByUserIdPage() {
+        return messageDAO.getMessagesByUserId(randomAccountId(), 0, 20);
+    }
+
+    @Benchmark
+    public Object getMessagesByUserIdAll() {
+        return messageDAO.getMessagesByUserId(randomAccountId());
+    }
+
+    @Benchmark
+    public Object getAllMessages() {
+        return messageDAO.getAllMessages();
+    }
+
+    @Benchmark
+    public void streamAllMessages(Blackhole blackhole) throws IOException {
+        messageDAO.streamAllMessages(500, blackhole::consume);
+    }
+
+    @Benchmark
+    public Object insertMessage() {
+        return messageDAO.insertMessage(new Message(randomAccountId(), "inserted by benchmark", 1669947792L));
+    }
+
+    @Benchmark
+    public Object updateMessageText() {
+        return messageDAO.updateMessageText(randomMessageId(), "updated by benchmark");
+    }
+}
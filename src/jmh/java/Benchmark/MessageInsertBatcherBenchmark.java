@@ -0,0 +1,66 @@
+package Benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageInsertBatcher;
+
+/**
+ * Compares insert throughput of POST /messages' two write paths from sixteen threads: one MessageDAO insert
+ * and commit per message, and the MessageInsertBatcher's group commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+@Threads(16)
+public class MessageInsertBatcherBenchmark {
+    private static final int ACCOUNTS = 100;
+
+    @Param({"false", "true"})
+    public boolean batched;
+
+    private MessageDAO messageDAO;
+    private MessageInsertBatcher batcher;
+
+    @Setup(Level.Trial)
+    public void open() {
+        BenchmarkDatabase.seed(ACCOUNTS, 0);
+        messageDAO = new MessageDAO();
+        if (batched) {
+            batcher = new MessageInsertBatcher(messageDAO, 64, 2);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Object insertMessage() {
+        Message message = new Message(1 + ThreadLocalRandom.current().nextInt(ACCOUNTS), "inserted by benchmark", 1669947792L);
+        return batched ? batcher.submit(message).join() : messageDAO.insertMessage(message);
+    }
+}
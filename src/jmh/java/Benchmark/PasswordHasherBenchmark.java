@@ -0,0 +1,71 @@
+package Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.PasswordHasher;
+
+/**
+ * Measures password hashing and verification at several work factors on a single thread, so the scores read
+ * directly as logins per second per core. verifyCached shows the cost of a login answered by the verification
+ * cache instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(1)
+@Fork(1)
+public class PasswordHasherBenchmark {
+    @Param({"10000", "100000", "210000", "600000"})
+    public int iterations;
+
+    private PasswordHasher hasher;
+    private PasswordHasher cachingHasher;
+    private String stored;
+    private String cachedStored;
+
+    @Setup
+    public void setUp() {
+        hasher = new PasswordHasher("PBKDF2WithHmacSHA512", iterations, 1, 16, 0, 0);
+        cachingHasher = new PasswordHasher("PBKDF2WithHmacSHA512", iterations, 1, 16, 100, 60_000);
+        stored = hasher.hash("password");
+        cachedStored = cachingHasher.hash("password");
+        cachingHasher.verify("password", cachedStored);
+    }
+
+    @TearDown
+    public void tearDown() {
+        hasher.shutdown();
+        cachingHasher.shutdown();
+    }
+
+    @Benchmark
+    public String hash() {
+        return hasher.hash("password");
+    }
+
+    @Benchmark
+    public PasswordHasher.Verification verify() {
+        return hasher.verify("password", stored);
+    }
+
+    @Benchmark
+    public PasswordHasher.Verification verifyCached() {
+        return cachingHasher.verify("password", cachedStored);
+    }
+}
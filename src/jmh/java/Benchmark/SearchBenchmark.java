@@ -0,0 +1,68 @@
+package Benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.MessageSearchIndex;
+
+/**
+ * Measures search latency percentiles of MessageSearchIndex over synthetic messages of eight words drawn from a
+ * Zipf-like vocabulary, so some terms are very common and most are rare. Sample mode reports p99 directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+    private static final int VOCABULARY = 50_000;
+
+    @Param({"1000000"})
+    public int messageCount;
+
+    private MessageSearchIndex index;
+    private final Random random = new Random(42);
+
+    @Setup
+    public void setUp() {
+        index = new MessageSearchIndex(20_000);
+        StringBuilder text = new StringBuilder();
+        for (int id = 1; id <= messageCount; id++) {
+            text.setLength(0);
+            for (int w = 0; w < 8; w++) {
+                text.append(word()).append(' ');
+            }
+            index.put(id, text.toString());
+        }
+    }
+
+    /**
+     * A word whose rank follows a rough power law: "w0" is in most messages, "w49999" in very few.
+     */
+    private String word() {
+        return "w" + (int) (VOCABULARY * Math.pow(random.nextDouble(), 3));
+    }
+
+    @Benchmark
+    public int[] searchTwoTerms() {
+        return index.search(word() + " " + word(), 0, 20);
+    }
+
+    @Benchmark
+    public int[] searchCommonTerm() {
+        return index.search("w0", 0, 20);
+    }
+}
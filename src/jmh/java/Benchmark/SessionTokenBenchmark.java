@@ -0,0 +1,51 @@
+package Benchmark;
+
+import java.security.SecureRandom;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.SessionTokenService;
+
+/**
+ * Measures the per-request cost of issuing and checking a session token, which replaces a database lookup
+ * for authorizing message writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionTokenBenchmark {
+    private SessionTokenService tokens;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        tokens = new SessionTokenService(secret, 3_600_000);
+        token = tokens.issue(42);
+    }
+
+    @Benchmark
+    public String issue() {
+        return tokens.issue(42);
+    }
+
+    @Benchmark
+    public OptionalInt verify() {
+        return tokens.verify(token);
+    }
+}
@@ -0,0 +1,90 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.StorageEngine;
+import Model.Message;
+
+/**
+ * Measures insert throughput of the sharded engine from eight threads against one, two and four shard
+ * databases in a temporary directory, and the cost of reading one poster's messages, which stays on one
+ * shard.
+ */
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class ShardedMessageStoreBenchmark {
+    private static final int ACCOUNTS = 100;
+
+    @State(Scope.Benchmark)
+    public static class Shards {
+        @Param({"1", "2", "4"})
+        public int shards;
+
+        StorageEngine storage;
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            BenchmarkDatabase.seed(ACCOUNTS, 0);
+            directory = Files.createTempDirectory("shard-bench");
+            System.setProperty("storage.shards", Integer.toString(shards));
+            System.setProperty("storage.shard.url", "jdbc:h2:" + directory.toAbsolutePath() + "/shard%d;");
+            storage = StorageEngine.create("sharded", null);
+            storage.open();
+            for (int i = 0; i < 10 * ACCOUNTS; i++) {
+                storage.getMessageStore().insertMessage(new Message(1 + i % ACCOUNTS, "seeded by benchmark " + i, 1669947792L + i));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            storage.close();
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(8)
+    public Object insertMessage(Shards shards) {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return shards.storage.getMessageStore().insertMessage(new Message(postedBy, "inserted by benchmark", 1669947792L));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(8)
+    public Object getMessagesByUserId(Shards shards) {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return shards.storage.getMessageStore().getMessagesByUserId(postedBy);
+    }
+}
@@ -0,0 +1,137 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.StorageEngine;
+import Model.Message;
+
+/**
+ * Measures the memory engine with a write-ahead log: insert throughput with and without fsync, from one
+ * thread and from eight sharing each fsync, and the time to recover a log of messageCount inserts with
+ * and without a snapshot covering them.
+ */
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class WriteAheadLogBenchmark {
+    private static final int ACCOUNTS = 100;
+
+    @State(Scope.Benchmark)
+    public static class Writes {
+        @Param({"true", "false"})
+        public String fsync;
+
+        StorageEngine storage;
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void open() throws IOException {
+            BenchmarkDatabase.seed(ACCOUNTS, 0);
+            directory = Files.createTempDirectory("wal-bench");
+            System.setProperty("storage.wal.fsync", fsync);
+            storage = StorageEngine.create("memory", directory);
+            storage.open();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            storage.close();
+            deleteDirectory(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovery {
+        @Param({"100000"})
+        public int messageCount;
+
+        @Param({"true", "false"})
+        public String snapshot;
+
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void write() throws IOException {
+            BenchmarkDatabase.seed(ACCOUNTS, 0);
+            directory = Files.createTempDirectory("wal-bench");
+            System.setProperty("storage.wal.fsync", "false");
+            StorageEngine storage = StorageEngine.create("memory", directory);
+            storage.open();
+            for (int i = 0; i < messageCount; i++) {
+                storage.getMessageStore().insertMessage(new Message(1 + i % ACCOUNTS, "inserted by benchmark " + i, 1669947792L + i));
+            }
+            if (Boolean.parseBoolean(snapshot)) {
+                storage.getWriteAheadLog().snapshot();
+            }
+            storage.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(1)
+    public Object insertMessage(Writes writes) {
+        return insert(writes);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(8)
+    public Object insertMessageEightThreads(Writes writes) {
+        return insert(writes);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Object recover(Recovery recovery) {
+        StorageEngine storage = StorageEngine.create("memory", recovery.directory);
+        storage.open();
+        storage.close();
+        return storage;
+    }
+
+    private static Object insert(Writes writes) {
+        int postedBy = 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        return writes.storage.getMessageStore().insertMessage(new Message(postedBy, "inserted by benchmark", 1669947792L));
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -1,110 +1,633 @@
 package Controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.util.ConcurrencyUtil;
 import Model.Account;
 import Model.Message;
 import Service.AccountService;
 import Service.MessageService;
+import Service.SessionTokenService;
+import Service.TimelineService;
+import DAO.StorageEngine;
+import Util.ConnectionUtil;
+import Util.DatabaseUnavailableException;
+import Util.MessageBodyParser;
+import Util.ModelJsonMapper;
+import Util.PageCursor;
+import Util.ReadConsistency;
+import Util.ReadReplicas;
+
+import org.eclipse.jetty.server.Request;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SocialMediaController {
+    /**
+     * Page size used when a client asks for a page with "after" but no "limit".
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * Upper bound on "limit", so a single page can never grow without bound.
+     */
+    private static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * Results per page of GET /messages/search when no "limit" is given.
+     */
+    private static final int DEFAULT_SEARCH_SIZE = 20;
+    /**
+     * Messages returned by GET /accounts/{account_id}/timeline when no "limit" is given.
+     */
+    private static final int DEFAULT_TIMELINE_SIZE = 50;
+    /**
+     * When true, GET /messages writes rows to the response as they are read instead of
+     * building the whole list first. Set the messages.stream system property to false to disable.
+     */
+    private static final boolean STREAM_ALL_MESSAGES =
+            Boolean.parseBoolean(System.getProperty("messages.stream", "true"));
+    /**
+     * Messages read per database round trip when GET /messages streams in async mode. Set with the
+     * messages.streamChunkSize system property.
+     */
+    private static final int STREAM_CHUNK_SIZE = Integer.getInteger("messages.streamChunkSize", 500);
+    /**
+     * Serializes and writes every response in async mode once its database work is done, so a slow client
+     * never holds a database thread.
+     */
+    private static final ExecutorService RESPONSE_WRITER = Executors.newVirtualThreadPerTaskExecutor();
+    /**
+     * Seconds a client is asked to wait, via Retry-After, when the database executor is saturated.
+     */
+    private static final int RETRY_AFTER_SECONDS = 1;
+    /**
+     * When true, creating, updating and deleting messages requires a session token from /login.
+     * When false, requests without a token are still accepted, but a token that is sent must be valid.
+     */
+    private static final boolean REQUIRE_TOKEN = Boolean.getBoolean("auth.token.required");
+    private static final String BEARER = "Bearer ";
+    /**
+     * Cookie holding the version of the session's latest write, when db.readerUrls names reader databases.
+     * Reads in that session are served only by readers that have applied it, so a client always sees its
+     * own writes.
+     */
+    private static final String READ_AFTER_COOKIE = "read-after";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ModelJsonMapper jsonMapper = new ModelJsonMapper(objectMapper);
+    // Message bodies are tiny; anything over messages.maxBodyBytes is refused with 413.
+    private final MessageBodyParser bodyParser = new MessageBodyParser(objectMapper.getFactory(),
+            Integer.getInteger("messages.maxBodyBytes", 4096));
+    // Rows are flushed by the generator's buffer, not after every message.
+    private final ObjectWriter messageWriter = jsonMapper.writerFor(Message.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private StorageEngine storage;
     private AccountService accountService;
     private MessageService messageService;
+    private SessionTokenService sessionTokens;
 
     public SocialMediaController() {
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
+        // storage.engine=memory serves accounts, messages and follows from RAM; see StorageEngine
+        this.storage = StorageEngine.fromSystemProperties();
+        this.accountService = new AccountService(storage.getAccountStore());
+        this.messageService = new MessageService(storage.getMessageStore(), storage.getFollowStore());
+        this.sessionTokens = SessionTokenService.shared();
     }
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        ConnectionUtil.migrateDatabase();
+        storage.open();
+        accountService.warmUp();
+        messageService.warmUp();
+        // Every handler blocks on JDBC, so with server.virtualThreads=true each request runs on its own
+        // virtual thread instead of occupying one of Jetty's platform threads. Concurrency is then bounded
+        // by the connection pool rather than by the Jetty thread pool.
+        ConcurrencyUtil.INSTANCE.setUseLoom(Boolean.getBoolean("server.virtualThreads"));
+        Javalin app = Javalin.create(config -> config.jsonMapper(jsonMapper));
 
-        app.post("/register", this::handleUserRegistration);
-        app.post("/login", this::handleUserLogin);
-        app.post("/messages", this::handleCreateMessage);
-        app.get("/messages", this::handleGetAllMessages);
-        app.get("/messages/{message_id}", this::handleGetMessageById);
-        app.delete("/messages/{message_id}", this::handleDeleteMessage);
-        app.patch("/messages/{message_id}", this::handleUpdateMessageText);
-        app.get("/accounts/{account_id}/messages", this::handleGetMessagesByUserId);
+        // With server.async=true, handlers hand the JDBC work to the bounded database executor and
+        // return a future, so request threads stay free while the database is slow; the response is then
+        // written on a virtual thread, so database threads never wait on a socket.
+        boolean async = Boolean.getBoolean("server.async");
+        ReadReplicas readReplicas = ConnectionUtil.getReadReplicas();
+        if (readReplicas != null) {
+            app.before(ctx -> ReadConsistency.set(startReadConsistency(ctx, readReplicas)));
+            app.after(ctx -> finishReadConsistency(ctx, readReplicas));
+        }
+        app.post("/register", async ? this::handleUserRegistrationAsync : this::handleUserRegistration);
+        app.post("/login", async ? this::handleUserLoginAsync : this::handleUserLogin);
+        app.post("/messages", async ? this::handleCreateMessageAsync : this::handleCreateMessage);
+        app.get("/messages", async ? this::handleGetAllMessagesAsync : this::handleGetAllMessages);
+        // registered before /messages/{message_id}, which would otherwise match "search"
+        app.get("/messages/search", async ? this::handleSearchMessagesAsync : this::handleSearchMessages);
+        app.get("/messages/{message_id}", async ? this::handleGetMessageByIdAsync : this::handleGetMessageById);
+        app.delete("/messages/{message_id}", async ? this::handleDeleteMessageAsync : this::handleDeleteMessage);
+        app.patch("/messages/{message_id}", async ? this::handleUpdateMessageTextAsync : this::handleUpdateMessageText);
+        app.get("/accounts/{account_id}/messages",
+                async ? this::handleGetMessagesByUserIdAsync : this::handleGetMessagesByUserId);
+        app.get("/accounts/{account_id}/timeline", async ? this::handleGetTimelineAsync : this::handleGetTimeline);
+        app.get("/accounts/{account_id}/following", this::handleGetFollowing);
+        app.get("/accounts/{account_id}/followers", this::handleGetFollowers);
+        app.put("/accounts/{account_id}/following/{followee_id}", async ? this::handleFollowAsync : this::handleFollow);
+        app.delete("/accounts/{account_id}/following/{followee_id}",
+                async ? this::handleUnfollowAsync : this::handleUnfollow);
+
+        app.exception(RejectedExecutionException.class, (e, ctx) -> respondOverloaded(ctx));
+        // the connection pool stayed exhausted for its acquire timeout, or the database is down
+        app.exception(DatabaseUnavailableException.class, (e, ctx) -> respondOverloaded(ctx));
+        app.exception(CompletionException.class, (e, ctx) -> {
+            if (e.getCause() instanceof RejectedExecutionException
+                    || e.getCause() instanceof DatabaseUnavailableException) {
+                respondOverloaded(ctx);
+            } else {
+                ctx.status(500);
+            }
+        });
+        app.events(events -> events.serverStopped(storage::close));
 
         return app;
     }
 
+    /**
+     * Reads the session's last write version from its cookie and makes it current for the request.
+     */
+    private ReadConsistency startReadConsistency(Context ctx, ReadReplicas readReplicas) {
+        ReadConsistency consistency = new ReadConsistency(
+                ReadConsistency.decode(ctx.cookie(READ_AFTER_COOKIE), readReplicas.getEpoch()));
+        ctx.attribute(READ_AFTER_COOKIE, consistency);
+        return consistency;
+    }
+
+    /**
+     * Stores the version of anything the request wrote in the session's cookie.
+     */
+    private void finishReadConsistency(Context ctx, ReadReplicas readReplicas) {
+        ReadConsistency.set(null);
+        ReadConsistency consistency = ctx.attribute(READ_AFTER_COOKIE);
+        if (consistency != null && consistency.getLastWrite() > 0) {
+            ctx.cookie(READ_AFTER_COOKIE, ReadConsistency.encode(readReplicas.getEpoch(), consistency.getReadAfter()));
+        }
+    }
+
+    /**
+     * Writes a 200 JSON response straight to the response stream with the mapper's precompiled
+     * writer, skipping the intermediate String and byte[] that ctx.json builds.
+     */
+    private void respondJson(Context ctx, Object value, Type type) {
+        ctx.status(200).contentType(ContentType.APPLICATION_JSON);
+        try {
+            jsonMapper.writeTo(ctx.outputStream(), value, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void respondOverloaded(Context ctx) {
+        ctx.header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        ctx.status(503).result("");
+    }
+
     private void handleUserRegistration(Context ctx) {
+        Account account = parseRegistration(ctx);
+        if (account != null) {
+            respondRegistration(ctx, accountService.createAccount(account));
+        }
+    }
+
+    private void handleUserRegistrationAsync(Context ctx) {
+        Account account = parseRegistration(ctx);
+        if (account != null) {
+            ctx.future(() -> accountService.createAccountAsync(account)
+                    .thenAcceptAsync(createdAccount -> respondRegistration(ctx, createdAccount), RESPONSE_WRITER));
+        }
+    }
+
+    /**
+     * @return the account to register, or null after responding 400 if it is invalid
+     */
+    private Account parseRegistration(Context ctx) {
         Account account = ctx.bodyAsClass(Account.class);
         if (account.getUsername() == null || account.getUsername().isEmpty() ||
             account.getPassword() == null || account.getPassword().length() <= 4) {
             ctx.status(400).json("");
-            return;
+            return null;
         }
-    
-        // Check for duplicate username
-        Account createdAccount = accountService.createAccount(account);
+        return account;
+    }
+
+    private void respondRegistration(Context ctx, Account createdAccount) {
+        // A null account means the username was already taken
         if (createdAccount == null) {
             ctx.status(400).json("");
             return;
         }
     
-        ctx.status(200).json(createdAccount); // Successfully created account
+        respondJson(ctx, createdAccount, Account.class); // Successfully created account
     }
     
 
     private void handleUserLogin(Context ctx) {
         Account account = ctx.bodyAsClass(Account.class);
-        Account isLoggedIn = accountService.login(account.getUsername());
-        if (isLoggedIn == null || !isLoggedIn.getPassword().equals(account.getPassword())) {
+        respondLogin(ctx, accountService.login(account.getUsername(), account.getPassword()));
+    }
+
+    private void handleUserLoginAsync(Context ctx) {
+        Account account = ctx.bodyAsClass(Account.class);
+        ctx.future(() -> accountService.loginAsync(account.getUsername(), account.getPassword())
+                .thenAcceptAsync(isLoggedIn -> respondLogin(ctx, isLoggedIn), RESPONSE_WRITER));
+    }
+
+    /**
+     * A successful login carries a session token in the X-Auth-Token header, to be sent back
+     * as "Authorization: Bearer ..." on message writes.
+     */
+    private void respondLogin(Context ctx, Account isLoggedIn) {
+        if (isLoggedIn == null) {
             ctx.status(401);
         } else {
-            ctx.status(200).json(isLoggedIn);
+            ctx.header("X-Auth-Token", sessionTokens.issue(isLoggedIn.getAccount_id()));
+            respondJson(ctx, isLoggedIn, Account.class);
+        }
+    }
+
+    /**
+     * Reads the caller's account from the session token in the Authorization header. The token
+     * is checked in-process, so this never costs a database round trip.
+     *
+     * @return the caller's account id, empty if no token was sent and tokens are not required,
+     *         or null after responding 401 if the token is required, invalid or expired
+     */
+    private OptionalInt authenticate(Context ctx) {
+        String header = ctx.header("Authorization");
+        if (header == null || !header.startsWith(BEARER)) {
+            if (REQUIRE_TOKEN) {
+                ctx.status(401).result("");
+                return null;
+            }
+            return OptionalInt.empty();
+        }
+        OptionalInt accountId = sessionTokens.verify(header.substring(BEARER.length()));
+        if (accountId.isEmpty()) {
+            ctx.status(401).result("");
+            return null;
+        }
+        return accountId;
+    }
+
+    private void handleCreateMessage(Context ctx) throws IOException {
+        Message message = parseNewMessage(ctx);
+        if (message != null) {
+            respondCreatedMessage(ctx, messageService.createMessage(message));
+        }
+    }
+
+    private void handleCreateMessageAsync(Context ctx) throws IOException {
+        Message message = parseNewMessage(ctx);
+        if (message != null) {
+            ctx.future(() -> messageService.createMessageAsync(message)
+                    .thenAcceptAsync(createdMessage -> respondCreatedMessage(ctx, createdMessage), RESPONSE_WRITER));
         }
     }
 
-    private void handleCreateMessage(Context ctx) {
-        Message message = ctx.bodyAsClass(Message.class);
-        if (message.getMessage_text() == null || message.getMessage_text().isEmpty() ||
-            message.getMessage_text().length() > 255) {
+    /**
+     * @return the message to create, or null after responding 401 if the caller's token is
+     *         rejected, 400 if the message is invalid or its poster does not exist, or 403 if it
+     *         is posted as another account
+     */
+    private Message parseNewMessage(Context ctx) throws IOException {
+        OptionalInt caller = authenticate(ctx);
+        if (caller == null) {
+            return null;
+        }
+        Message message = parseMessageBody(ctx);
+        if (message == null) {
+            return null;
+        }
+        // the parser has already rejected text over MessageBodyParser.MAX_TEXT_LENGTH
+        if (message.getMessage_text() == null || message.getMessage_text().isEmpty()) {
             ctx.status(400).json("");
-            return;
+            return null;
+        }
+        if (caller.isPresent() && caller.getAsInt() != message.getPosted_by()) {
+            ctx.status(403).result("");
+            return null;
         }
+        // Answered from the in-memory id set, so an unknown poster never reaches the database
+        if (!accountService.accountExists(message.getPosted_by())) {
+            ctx.status(400).json("");
+            return null;
+        }
+        return message;
+    }
 
-        Message createdMessage = messageService.createMessage(message);
+    private void respondCreatedMessage(Context ctx, Message createdMessage) {
         if (createdMessage != null) {
-            ctx.status(200).json(createdMessage);
+            respondJson(ctx, createdMessage, Message.class);
         } else {
             ctx.status(400).json("");
         }
     }
 
-    private void handleGetAllMessages(Context ctx) {
+    private void handleGetAllMessages(Context ctx) throws IOException {
+        if (isTimeRangeRequest(ctx)) {
+            TimeRangeRequest request = parseTimeRangeRequest(ctx);
+            if (request != null) {
+                // Fetch one extra row to learn whether another page follows without a second query.
+                List<Message> page = messageService.getMessagesByTimeRange(request.since, request.until,
+                        request.afterTime, request.afterMessageId, request.limit + 1);
+                respondTimeRangePage(ctx, page, request.limit);
+            }
+            return;
+        }
+        if (STREAM_ALL_MESSAGES) {
+            streamAllMessages(ctx);
+            return;
+        }
         List<Message> messages = messageService.getAllMessages();
-        ctx.json(messages);
+        respondJson(ctx, messages, jsonMapper.messageListType());
+    }
+
+    private void handleGetAllMessagesAsync(Context ctx) {
+        if (isTimeRangeRequest(ctx)) {
+            TimeRangeRequest request = parseTimeRangeRequest(ctx);
+            if (request != null) {
+                ctx.future(() -> messageService.getMessagesByTimeRangeAsync(request.since, request.until,
+                                request.afterTime, request.afterMessageId, request.limit + 1)
+                        .thenAcceptAsync(page -> respondTimeRangePage(ctx, page, request.limit), RESPONSE_WRITER));
+            }
+            return;
+        }
+        if (!STREAM_ALL_MESSAGES) {
+            ctx.future(() -> messageService.getAllMessagesAsync()
+                    .thenAcceptAsync(messages -> respondJson(ctx, messages, jsonMapper.messageListType()),
+                            RESPONSE_WRITER));
+            return;
+        }
+        ReadConsistency consistency = ReadConsistency.current();
+        ctx.future(() -> streamAllMessagesAsync(ctx, consistency));
+    }
+
+    /**
+     * Writes the message table as a JSON array, reading it a chunk at a time on the database executor and
+     * writing each chunk on {@link #RESPONSE_WRITER} once its connection is back in the pool. Nothing is
+     * written before the first chunk arrives, so a rejected first read still gets a clean 503; a failure
+     * after that aborts the connection, as {@link #streamAllMessages(Context)} does.
+     */
+    private CompletableFuture<Void> streamAllMessagesAsync(Context ctx, ReadConsistency consistency) {
+        AtomicBoolean started = new AtomicBoolean();
+        return messageService.getMessagesAfterAsync(0, STREAM_CHUNK_SIZE)
+                .thenComposeAsync(chunk -> {
+                    started.set(true);
+                    ctx.contentType("application/json");
+                    JsonGenerator generator;
+                    try {
+                        generator = createStreamGenerator(ctx);
+                        generator.writeStartArray();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return writeMessageChunk(ctx, generator, chunk, consistency);
+                }, RESPONSE_WRITER)
+                .whenComplete((done, e) -> {
+                    if (e != null && started.get()) {
+                        abortResponse(ctx, e);
+                    }
+                });
+    }
+
+    /**
+     * Writes a chunk and asks for the next one, or closes the array after a short chunk.
+     */
+    private CompletableFuture<Void> writeMessageChunk(Context ctx, JsonGenerator generator, List<Message> chunk,
+            ReadConsistency consistency) {
+        try {
+            for (Message message : chunk) {
+                messageWriter.writeValue(generator, message);
+            }
+            if (chunk.size() < STREAM_CHUNK_SIZE) {
+                generator.writeEndArray();
+                generator.close();
+                return CompletableFuture.completedFuture(null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // the database executor reads with the consistency current on the thread that submits the read
+        ReadConsistency.set(consistency);
+        return messageService.getMessagesAfterAsync(chunk.get(chunk.size() - 1).getMessage_id(), STREAM_CHUNK_SIZE)
+                .thenComposeAsync(next -> writeMessageChunk(ctx, generator, next, consistency), RESPONSE_WRITER);
+    }
+
+    private static boolean isTimeRangeRequest(Context ctx) {
+        return ctx.queryParam("since") != null || ctx.queryParam("until") != null
+                || ctx.queryParam("limit") != null || ctx.queryParam("after") != null;
+    }
+
+    /**
+     * since and until are time_posted_epoch values; since is inclusive, until exclusive, and either may be
+     * left out. after is the X-Next-Cursor of the previous page.
+     *
+     * @return the requested page, or null after responding 400 if a parameter is invalid
+     */
+    private TimeRangeRequest parseTimeRangeRequest(Context ctx) {
+        long since;
+        long until;
+        int limit;
+        PageCursor.TimePosition after;
+        try {
+            String sinceParam = ctx.queryParam("since");
+            since = sinceParam == null ? Long.MIN_VALUE : Long.parseLong(sinceParam);
+            String untilParam = ctx.queryParam("until");
+            until = untilParam == null ? Long.MAX_VALUE : Long.parseLong(untilParam);
+            String limitParam = ctx.queryParam("limit");
+            limit = limitParam == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam);
+            String afterParam = ctx.queryParam("after");
+            after = afterParam == null || afterParam.isEmpty()
+                    ? new PageCursor.TimePosition(since, 0)
+                    : PageCursor.decodeTime(afterParam);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json("");
+            return null;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE || since > until) {
+            ctx.status(400).json("");
+            return null;
+        }
+        return new TimeRangeRequest(since, until, after.timePosted, after.messageId, limit);
+    }
+
+    /**
+     * Writes a time-ordered page fetched with one row more than the limit; when the extra row is
+     * present, the cursor of the next page is sent in the X-Next-Cursor header.
+     */
+    private void respondTimeRangePage(Context ctx, List<Message> page, int limit) {
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            Message last = page.get(limit - 1);
+            ctx.header("X-Next-Cursor", PageCursor.encodeTime(last.getTime_posted_epoch(), last.getMessage_id()));
+        }
+        respondJson(ctx, page, jsonMapper.messageListType());
+    }
+
+    /**
+     * Writes the message table to the response as a JSON array, one message at a time,
+     * so the response never holds more than one row in memory. If reading fails part way the
+     * connection is aborted instead of closing the array, so the client cannot take the rows it
+     * got for the whole table.
+     */
+    private void streamAllMessages(Context ctx) throws IOException {
+        ctx.contentType("application/json");
+        JsonGenerator generator = createStreamGenerator(ctx);
+        try {
+            generator.writeStartArray();
+            messageService.streamAllMessages(message -> messageWriter.writeValue(generator, message));
+            generator.writeEndArray();
+            generator.close();
+        } catch (DatabaseUnavailableException e) {
+            // no connection, so nothing but the unflushed "[" was written: a clean 503 is still possible
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            abortResponse(ctx, e);
+            throw e;
+        }
+    }
+
+    /**
+     * A generator on the response stream that leaves an unfinished array open, rather than
+     * completing it, if it is closed early.
+     */
+    private JsonGenerator createStreamGenerator(Context ctx) throws IOException {
+        return objectMapper.getFactory().createGenerator(ctx.outputStream())
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    }
+
+    /**
+     * Drops the connection under a response that may already be partly sent, so the client sees
+     * a failed request rather than a short body ending cleanly.
+     */
+    private static void abortResponse(Context ctx, Throwable cause) {
+        Request.getBaseRequest(ctx.req()).getHttpChannel().abort(cause);
+    }
+
+    private void handleSearchMessages(Context ctx) {
+        SearchRequest request = parseSearchRequest(ctx);
+        if (request != null) {
+            respondSearchResults(ctx, messageService.searchMessages(request.query, request.offset, request.limit + 1), request);
+        }
+    }
+
+    private void handleSearchMessagesAsync(Context ctx) {
+        SearchRequest request = parseSearchRequest(ctx);
+        if (request != null) {
+            ctx.future(() -> messageService.searchMessagesAsync(request.query, request.offset, request.limit + 1)
+                    .thenAcceptAsync(results -> respondSearchResults(ctx, results, request), RESPONSE_WRITER));
+        }
+    }
+
+    /**
+     * @return the search to run, or null after responding 400 if q is missing or limit or
+     *         offset is invalid. offset + limit may not exceed MAX_PAGE_SIZE.
+     */
+    private SearchRequest parseSearchRequest(Context ctx) {
+        String query = ctx.queryParam("q");
+        int limit;
+        int offset;
+        try {
+            String limitParam = ctx.queryParam("limit");
+            limit = limitParam == null ? DEFAULT_SEARCH_SIZE : Integer.parseInt(limitParam);
+            String offsetParam = ctx.queryParam("offset");
+            offset = offsetParam == null ? 0 : Integer.parseInt(offsetParam);
+        } catch (NumberFormatException e) {
+            ctx.status(400).json("");
+            return null;
+        }
+        if (query == null || query.isBlank() || limit < 1 || offset < 0 || offset + limit > MAX_PAGE_SIZE) {
+            ctx.status(400).json("");
+            return null;
+        }
+        return new SearchRequest(query, offset, limit);
+    }
+
+    /**
+     * Writes results fetched with one more than the limit; when the extra one is present, the
+     * offset of the next page is sent in the X-Next-Offset header.
+     */
+    private void respondSearchResults(Context ctx, List<Message> results, SearchRequest request) {
+        if (results.size() > request.limit) {
+            results = results.subList(0, request.limit);
+            ctx.header("X-Next-Offset", String.valueOf(request.offset + request.limit));
+        }
+        respondJson(ctx, results, jsonMapper.messageListType());
     }
 
     private void handleGetMessageById(Context ctx) {
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Optional<Message> message = messageService.getMessageById(messageId);
-    
+        respondMessageById(ctx, messageService.getMessageById(messageId));
+    }
+
+    private void handleGetMessageByIdAsync(Context ctx) {
+        int messageId = Integer.parseInt(ctx.pathParam("message_id"));
+        ctx.future(() -> messageService.getMessageByIdAsync(messageId)
+                .thenAcceptAsync(message -> respondMessageById(ctx, message), RESPONSE_WRITER));
+    }
+
+    private void respondMessageById(Context ctx, Optional<Message> message) {
         if (message.isPresent()) {
-            ctx.status(200).json(message.get());
+            respondJson(ctx, message.get(), Message.class);
         } else {
             ctx.status(200).json(""); 
         }
     }
     
 
+    /**
+     * With a session token only the caller's own message is deleted; another account's
+     * message is treated as not found, so ownership costs no extra query.
+     */
     private void handleDeleteMessage(Context ctx) {
+        OptionalInt caller = authenticate(ctx);
+        if (caller == null) {
+            return;
+        }
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        Optional<Message> message = messageService.getMessageById(messageId); // Fetch the message first
-        boolean isDeleted = messageService.deleteMessage(messageId);
-    
-        if (isDeleted && message.isPresent()) {
+        respondDeletedMessage(ctx, caller.isPresent()
+                ? messageService.deleteAndReturnMessage(messageId, caller.getAsInt())
+                : messageService.deleteAndReturnMessage(messageId));
+    }
+
+    private void handleDeleteMessageAsync(Context ctx) {
+        OptionalInt caller = authenticate(ctx);
+        if (caller == null) {
+            return;
+        }
+        int messageId = Integer.parseInt(ctx.pathParam("message_id"));
+        ctx.future(() -> (caller.isPresent()
+                ? messageService.deleteAndReturnMessageAsync(messageId, caller.getAsInt())
+                : messageService.deleteAndReturnMessageAsync(messageId))
+                .thenAcceptAsync(message -> respondDeletedMessage(ctx, message), RESPONSE_WRITER));
+    }
+
+    private void respondDeletedMessage(Context ctx, Optional<Message> message) {
+        if (message.isPresent()) {
             // Return JSON representation of the deleted message if it was found and deleted
-            ctx.status(200).json(message.get());
+            respondJson(ctx, message.get(), Message.class);
         } else {
             // Return 200 with an empty body if the message was not found.
             ctx.status(200).result("");
@@ -112,20 +635,77 @@ public class SocialMediaController {
     }
     
 
-    private void handleUpdateMessageText(Context ctx) {
+    /**
+     * With a session token only the caller's own message is updated; another account's
+     * message is treated as not found.
+     */
+    private void handleUpdateMessageText(Context ctx) throws IOException {
+        OptionalInt caller = authenticate(ctx);
+        if (caller == null) {
+            return;
+        }
         int messageId = Integer.parseInt(ctx.pathParam("message_id"));
-        // Parse the JSON body as a Map and get the "message_text" field
-        @SuppressWarnings("unchecked")
-        Map<String, String> body = ctx.bodyAsClass(Map.class);
-        String newText = body.get("message_text");
-        if (newText == null || newText.isEmpty() || newText.length() > 255) {
-            ctx.status(400).json("");
+        String newText = parseNewMessageText(ctx);
+        if (newText != null) {
+            respondUpdatedMessage(ctx, caller.isPresent()
+                    ? messageService.updateMessageText(messageId, caller.getAsInt(), newText)
+                    : messageService.updateMessageText(messageId, newText));
+        }
+    }
+
+    private void handleUpdateMessageTextAsync(Context ctx) throws IOException {
+        OptionalInt caller = authenticate(ctx);
+        if (caller == null) {
             return;
         }
+        int messageId = Integer.parseInt(ctx.pathParam("message_id"));
+        String newText = parseNewMessageText(ctx);
+        if (newText != null) {
+            ctx.future(() -> (caller.isPresent()
+                    ? messageService.updateMessageTextAsync(messageId, caller.getAsInt(), newText)
+                    : messageService.updateMessageTextAsync(messageId, newText))
+                    .thenAcceptAsync(updatedMessage -> respondUpdatedMessage(ctx, updatedMessage), RESPONSE_WRITER));
+        }
+    }
 
-        Message updatedMessage = messageService.updateMessageText(messageId, newText);
+    /**
+     * @return the new message text, or null after responding 400 if it is invalid or 413 if
+     *         the body is too large
+     */
+    private String parseNewMessageText(Context ctx) throws IOException {
+        Message body = parseMessageBody(ctx);
+        if (body == null) {
+            return null;
+        }
+        String newText = body.getMessage_text();
+        if (newText == null || newText.isEmpty()) {
+            ctx.status(400).json("");
+            return null;
+        }
+        return newText;
+    }
+
+    /**
+     * Reads a message body with the streaming parser, straight from the request stream.
+     *
+     * @return the fields in the body, or null after responding 413 if it is too large or 400
+     *         if it is malformed or its message_text is too long
+     */
+    private Message parseMessageBody(Context ctx) throws IOException {
+        try {
+            return bodyParser.parse(ctx.bodyInputStream(), ctx.contentLength());
+        } catch (MessageBodyParser.BodyTooLargeException e) {
+            ctx.status(413).json("");
+            return null;
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json("");
+            return null;
+        }
+    }
+
+    private void respondUpdatedMessage(Context ctx, Message updatedMessage) {
         if (updatedMessage != null) {
-            ctx.json(updatedMessage);
+            respondJson(ctx, updatedMessage, Message.class);
         } else {
             ctx.status(400).json("");
         }
@@ -133,11 +713,259 @@ public class SocialMediaController {
 
     private void handleGetMessagesByUserId(Context ctx) {
         int accountId = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> userMessages = messageService.getMessagesByUserId(accountId);
+        if (ctx.queryParam("limit") != null || ctx.queryParam("after") != null) {
+            handleGetMessagesPageByUserId(ctx, accountId);
+            return;
+        }
+        respondMessagesByUserId(ctx, messageService.getMessagesByUserId(accountId));
+    }
+
+    private void handleGetMessagesByUserIdAsync(Context ctx) {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        if (ctx.queryParam("limit") != null || ctx.queryParam("after") != null) {
+            PageRequest request = parsePageRequest(ctx);
+            if (request != null) {
+                ctx.future(() -> messageService.getMessagesByUserIdAsync(accountId, request.afterMessageId, request.limit + 1)
+                        .thenAcceptAsync(page -> respondMessagesPage(ctx, page, request.limit), RESPONSE_WRITER));
+            }
+            return;
+        }
+        ctx.future(() -> messageService.getMessagesByUserIdAsync(accountId)
+                .thenAcceptAsync(userMessages -> respondMessagesByUserId(ctx, userMessages), RESPONSE_WRITER));
+    }
+
+    private void respondMessagesByUserId(Context ctx, List<Message> userMessages) {
         if (userMessages != null) {
-            ctx.json(userMessages);
+            respondJson(ctx, userMessages, jsonMapper.messageListType());
         } else {
             ctx.status(404).json("No messages found for this user.");
         }
     }
+
+    /**
+     * Serves one page of an account's messages. The next page's cursor is sent in the
+     * X-Next-Cursor header and is omitted on the last page.
+     */
+    private void handleGetMessagesPageByUserId(Context ctx, int accountId) {
+        PageRequest request = parsePageRequest(ctx);
+        if (request == null) {
+            return;
+        }
+        // Fetch one extra row to learn whether another page follows without a second query.
+        List<Message> page = messageService.getMessagesByUserId(accountId, request.afterMessageId, request.limit + 1);
+        respondMessagesPage(ctx, page, request.limit);
+    }
+
+    /**
+     * @return the requested page, or null after responding 400 if limit or after is invalid
+     */
+    private PageRequest parsePageRequest(Context ctx) {
+        int limit;
+        int afterMessageId;
+        try {
+            String limitParam = ctx.queryParam("limit");
+            limit = limitParam == null ? DEFAULT_PAGE_SIZE : Integer.parseInt(limitParam);
+            String afterParam = ctx.queryParam("after");
+            afterMessageId = afterParam == null || afterParam.isEmpty() ? 0 : PageCursor.decode(afterParam);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json("");
+            return null;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            ctx.status(400).json("");
+            return null;
+        }
+        return new PageRequest(afterMessageId, limit);
+    }
+
+    /**
+     * Writes a page fetched with one row more than the limit; the extra row only signals that
+     * another page follows.
+     */
+    private void respondMessagesPage(Context ctx, List<Message> page, int limit) {
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            ctx.header("X-Next-Cursor", PageCursor.encode(page.get(limit - 1).getMessage_id()));
+        }
+        respondJson(ctx, page, jsonMapper.messageListType());
+    }
+
+    private void handleGetTimeline(Context ctx) {
+        Integer accountId = parseTimelineAccount(ctx);
+        Integer limit = accountId == null ? null : parseTimelineLimit(ctx);
+        if (limit != null) {
+            respondJson(ctx, messageService.getTimeline(accountId, limit), jsonMapper.messageListType());
+        }
+    }
+
+    private void handleGetTimelineAsync(Context ctx) {
+        Integer accountId = parseTimelineAccount(ctx);
+        Integer limit = accountId == null ? null : parseTimelineLimit(ctx);
+        if (limit != null) {
+            ctx.future(() -> messageService.getTimelineAsync(accountId, limit)
+                    .thenAcceptAsync(timeline -> respondJson(ctx, timeline, jsonMapper.messageListType()),
+                            RESPONSE_WRITER));
+        }
+    }
+
+    /**
+     * Checked before the timeline is read, since reading it gives the account a feed.
+     *
+     * @return the account whose timeline is wanted, or null after responding 400 if account_id is not a
+     *         number or 404 if there is no such account
+     */
+    private Integer parseTimelineAccount(Context ctx) {
+        int accountId;
+        try {
+            accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        } catch (NumberFormatException e) {
+            ctx.status(400).json("");
+            return null;
+        }
+        if (!accountService.accountExists(accountId)) {
+            ctx.status(404).json("");
+            return null;
+        }
+        return accountId;
+    }
+
+    /**
+     * @return the number of timeline messages wanted, or null after responding 400 if "limit" is invalid
+     */
+    private Integer parseTimelineLimit(Context ctx) {
+        String limitParam = ctx.queryParam("limit");
+        try {
+            int limit = limitParam == null ? DEFAULT_TIMELINE_SIZE : Integer.parseInt(limitParam);
+            if (limit >= 1 && limit <= MAX_PAGE_SIZE) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to 400
+        }
+        ctx.status(400).json("");
+        return null;
+    }
+
+    private void handleGetFollowing(Context ctx) {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        ctx.json(messageService.getTimelineService().getFollowing(accountId));
+    }
+
+    private void handleGetFollowers(Context ctx) {
+        int accountId = Integer.parseInt(ctx.pathParam("account_id"));
+        ctx.json(messageService.getTimelineService().getFollowers(accountId));
+    }
+
+    private void handleFollow(Context ctx) {
+        FollowRequest request = parseFollowRequest(ctx);
+        if (request != null) {
+            respondFollow(ctx, messageService.getTimelineService().follow(request.followerId, request.followeeId));
+        }
+    }
+
+    private void handleFollowAsync(Context ctx) {
+        FollowRequest request = parseFollowRequest(ctx);
+        if (request != null) {
+            TimelineService timelines = messageService.getTimelineService();
+            ctx.future(() -> timelines.followAsync(request.followerId, request.followeeId)
+                    .thenAcceptAsync(followed -> respondFollow(ctx, followed), RESPONSE_WRITER));
+        }
+    }
+
+    private void handleUnfollow(Context ctx) {
+        FollowRequest request = parseFollowRequest(ctx);
+        if (request != null) {
+            messageService.getTimelineService().unfollow(request.followerId, request.followeeId);
+            ctx.status(200).result("");
+        }
+    }
+
+    private void handleUnfollowAsync(Context ctx) {
+        FollowRequest request = parseFollowRequest(ctx);
+        if (request != null) {
+            TimelineService timelines = messageService.getTimelineService();
+            ctx.future(() -> timelines.unfollowAsync(request.followerId, request.followeeId)
+                    .thenAcceptAsync(removed -> ctx.status(200).result(""), RESPONSE_WRITER));
+        }
+    }
+
+    /**
+     * @return the follow to change, or null after responding 401 if the caller's token is
+     *         rejected, 403 if it acts for another account, or 400 if either account does not
+     *         exist or an account would follow itself
+     */
+    private FollowRequest parseFollowRequest(Context ctx) {
+        OptionalInt caller = authenticate(ctx);
+        if (caller == null) {
+            return null;
+        }
+        int followerId = Integer.parseInt(ctx.pathParam("account_id"));
+        int followeeId = Integer.parseInt(ctx.pathParam("followee_id"));
+        if (caller.isPresent() && caller.getAsInt() != followerId) {
+            ctx.status(403).result("");
+            return null;
+        }
+        if (followerId == followeeId || !accountService.accountExists(followerId)
+                || !accountService.accountExists(followeeId)) {
+            ctx.status(400).json("");
+            return null;
+        }
+        return new FollowRequest(followerId, followeeId);
+    }
+
+    private void respondFollow(Context ctx, boolean followed) {
+        if (followed) {
+            ctx.status(200).result("");
+        } else {
+            ctx.status(400).json("");
+        }
+    }
+
+    private static class FollowRequest {
+        final int followerId;
+        final int followeeId;
+
+        FollowRequest(int followerId, int followeeId) {
+            this.followerId = followerId;
+            this.followeeId = followeeId;
+        }
+    }
+
+    private static class SearchRequest {
+        final String query;
+        final int offset;
+        final int limit;
+
+        SearchRequest(String query, int offset, int limit) {
+            this.query = query;
+            this.offset = offset;
+            this.limit = limit;
+        }
+    }
+
+    private static class PageRequest {
+        final int afterMessageId;
+        final int limit;
+
+        PageRequest(int afterMessageId, int limit) {
+            this.afterMessageId = afterMessageId;
+            this.limit = limit;
+        }
+    }
+
+    private static class TimeRangeRequest {
+        final long since;
+        final long until;
+        final long afterTime;
+        final int afterMessageId;
+        final int limit;
+
+        TimeRangeRequest(long since, long until, long afterTime, int afterMessageId, int limit) {
+            this.since = since;
+            this.until = until;
+            this.afterTime = afterTime;
+            this.afterMessageId = afterMessageId;
+            this.limit = limit;
+        }
+    }
 }
@@ -3,6 +3,9 @@ package DAO;
 import Model.Account;
 import Util.ConnectionUtil;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -13,8 +16,12 @@ import java.util.List;
  * - id (int, primary key, auto-incremented),
  * - username (varchar),
  * - password (varchar).
+ * It is the JDBC implementation of {@link AccountStore}.
+ * Reads that serve requests use {@link ConnectionUtil#getReadConnection()}, and every write reports
+ * the rows it changed so reader databases copy them.
  */
-public class AccountDAO {
+public class AccountDAO implements AccountStore {
+    private static final Logger LOG = LoggerFactory.getLogger(AccountDAO.class);
 
     /**
      * Retrieves all accounts from the account table.
@@ -22,9 +29,8 @@ public class AccountDAO {
      * @return a list of all Account objects.
      */
     public List<Account> getAllAccounts() {
-        Connection connection = ConnectionUtil.getConnection();
         List<Account> accounts = new ArrayList<>();
-        try {
+        try (Connection connection = ConnectionUtil.getConnection()) {
             String sql = "SELECT * FROM account";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             ResultSet rs = preparedStatement.executeQuery();
@@ -35,7 +41,7 @@ public class AccountDAO {
                 accounts.add(account);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.error("op=getAllAccounts failed", e);
         }
         return accounts;
     }
@@ -47,8 +53,7 @@ public class AccountDAO {
      * @return the persisted Account with its generated ID, or null if insertion fails.
      */
     public Account insertAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        try (Connection connection = ConnectionUtil.getConnection()) {
             String sql = "INSERT INTO account (username, password) VALUES (?, ?)";
             PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 
@@ -60,10 +65,13 @@ public class AccountDAO {
             ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
             if (pkeyResultSet.next()) {
                 int generated_account_id = (int)pkeyResultSet.getLong(1);
+                ConnectionUtil.rowChanged("account", generated_account_id);
                 return new Account(generated_account_id, account.getUsername(), account.getPassword());
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=insertAccount rejected reason={}", e.getMessage());
+            }
         }
         return null;
     }
@@ -75,10 +83,7 @@ public class AccountDAO {
      * @return the Account object if found, otherwise null.
      */
     public Account getAccountByUsername(String account) {
-        Connection connection = ConnectionUtil.getConnection();
-        System.out.println("Database Connection: " + connection);
-        try {
-            // System.out.println("Executing SQL query to fetch account: " + account.getUsername());
+        try (Connection connection = ConnectionUtil.getReadConnection()) {
             String sql = "SELECT * FROM account WHERE username = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setString(1, account);
@@ -86,15 +91,60 @@ public class AccountDAO {
             ResultSet rs = preparedStatement.executeQuery();
             
             if (rs.next()) {
-                System.out.println("Account found with username: " + rs.getString("username"));
+                if (LOG.isDebugEnabled()) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("op=getAccountByUsername found account_id={}", rs.getInt("account_id"));
+                    }
+                }
                 return new Account(rs.getInt("account_id"), 
                                    rs.getString("username"), 
                                    rs.getString("password"));
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            LOG.error("op=getAccountByUsername failed", e);
         }
         return null;
     }
-    
+
+    /**
+     * Checks that an account exists, for stores whose message table has no foreign key to it. Reads the
+     * writer, since an account registered a moment ago may not be on a reader yet.
+     * 
+     * @param accountId the ID of the account.
+     * @return true if the account exists.
+     */
+    public boolean accountExists(int accountId) {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            String sql = "SELECT 1 FROM account WHERE account_id = ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, accountId);
+            return preparedStatement.executeQuery().next();
+        } catch (SQLException e) {
+            LOG.error("op=accountExists failed account_id={}", accountId, e);
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the stored password of an account, used to upgrade stored hashes.
+     * 
+     * @param accountId the ID of the account.
+     * @param password the new stored password value.
+     * @return true if the account was updated, false otherwise.
+     */
+    public boolean updatePassword(int accountId, String password) {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            String sql = "UPDATE account SET password = ? WHERE account_id = ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, accountId);
+            if (preparedStatement.executeUpdate() > 0) {
+                ConnectionUtil.rowChanged("account", accountId);
+                return true;
+            }
+        } catch (SQLException e) {
+            LOG.error("op=updatePassword failed account_id={}", accountId, e);
+        }
+        return false;
+    }
 }
@@ -0,0 +1,37 @@
+package DAO;
+
+import Model.Account;
+
+import java.util.List;
+
+/**
+ * Persistence operations on accounts. {@link AccountDAO} implements them over JDBC and
+ * {@link InMemoryAccountStore} keeps every account in memory; {@link StorageEngine} picks one at startup.
+ *
+ * Implementations must be safe for concurrent use. Accounts returned are copies the caller may modify.
+ */
+public interface AccountStore {
+    /**
+     * @return a list of all accounts.
+     */
+    List<Account> getAllAccounts();
+
+    /**
+     * Stores a new account with a generated ID.
+     * 
+     * @return the stored Account, or null if the username is taken.
+     */
+    Account insertAccount(Account account);
+
+    /**
+     * @return the account with that username, or null.
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * Replaces the stored password of an account.
+     * 
+     * @return true if the account was updated.
+     */
+    boolean updatePassword(int accountId, String password);
+}
@@ -0,0 +1,70 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * Receives every change made to the in-memory stores, so they can be made durable. Each method is called
+ * after the change is applied and while the store still holds the lock that orders changes to that row, so
+ * the log sees changes to one row in the order they were applied. It returns a position the store passes
+ * to {@link #awaitDurable(long)} once the lock is released.
+ *
+ * Every record carries the whole new state of its row (or its removal), so replaying a record twice, or
+ * replaying records over a snapshot that already includes them, gives the same result.
+ */
+public interface ChangeLog {
+    /**
+     * A change log that records nothing, for in-memory stores that are not durable.
+     */
+    ChangeLog NONE = new ChangeLog() {
+        @Override
+        public long accountPut(Account account) {
+            return 0;
+        }
+
+        @Override
+        public long messagePut(Message message) {
+            return 0;
+        }
+
+        @Override
+        public long messageDeleted(int messageId) {
+            return 0;
+        }
+
+        @Override
+        public long followPut(int followerId, int followeeId) {
+            return 0;
+        }
+
+        @Override
+        public long followDeleted(int followerId, int followeeId) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(long lsn) {
+        }
+    };
+
+    /**
+     * An account was created or changed.
+     */
+    long accountPut(Account account);
+
+    /**
+     * A message was created or changed.
+     */
+    long messagePut(Message message);
+
+    long messageDeleted(int messageId);
+
+    long followPut(int followerId, int followeeId);
+
+    long followDeleted(int followerId, int followeeId);
+
+    /**
+     * Waits until the change at the position, and every change before it, is on disk.
+     */
+    void awaitDurable(long lsn);
+}
@@ -0,0 +1,92 @@
+package DAO;
+
+import Model.Follow;
+import Util.ConnectionUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The FollowDAO class mediates the transformation of Follow data between Java objects and database rows.
+ * It assumes a database table named 'follow' with columns: 
+ * - follower_id (int, references account),
+ * - followee_id (int, references account),
+ * with (follower_id, followee_id) as the primary key.
+ * It is the JDBC implementation of {@link FollowStore}. Every write reports the row it changed so reader
+ * databases copy it.
+ */
+public class FollowDAO implements FollowStore {
+    private static final Logger LOG = LoggerFactory.getLogger(FollowDAO.class);
+
+    /**
+     * Retrieves every follow relationship.
+     * 
+     * @return a list of all Follow objects.
+     */
+    public List<Follow> getAllFollows() {
+        List<Follow> follows = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            String sql = "SELECT follower_id, followee_id FROM follow";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                follows.add(new Follow(rs.getInt("follower_id"), rs.getInt("followee_id")));
+            }
+        } catch (SQLException e) {
+            LOG.error("op=getAllFollows failed", e);
+        }
+        return follows;
+    }
+
+    /**
+     * Records that one account follows another. Following an account twice is not an error.
+     * 
+     * @param followerId the account doing the following.
+     * @param followeeId the account being followed.
+     * @return true if the relationship is recorded, false if either account does not exist.
+     */
+    public boolean follow(int followerId, int followeeId) {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            String sql = "MERGE INTO follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, followerId);
+            preparedStatement.setInt(2, followeeId);
+            preparedStatement.executeUpdate();
+            ConnectionUtil.rowChanged("follow", followerId, followeeId);
+            return true;
+        } catch (SQLException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=follow rejected follower_id={} followee_id={} reason={}", followerId, followeeId, e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Removes a follow relationship.
+     * 
+     * @param followerId the account doing the following.
+     * @param followeeId the account being followed.
+     * @return true if a relationship was removed, false if there was none.
+     */
+    public boolean unfollow(int followerId, int followeeId) {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, followerId);
+            preparedStatement.setInt(2, followeeId);
+            if (preparedStatement.executeUpdate() > 0) {
+                ConnectionUtil.rowChanged("follow", followerId, followeeId);
+                return true;
+            }
+            return false;
+        } catch (SQLException e) {
+            LOG.error("op=unfollow failed follower_id={} followee_id={}", followerId, followeeId, e);
+            return false;
+        }
+    }
+}
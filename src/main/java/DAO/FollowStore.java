@@ -0,0 +1,28 @@
+package DAO;
+
+import Model.Follow;
+
+import java.util.List;
+
+/**
+ * Persistence operations on follow relationships. {@link FollowDAO} implements them over JDBC and
+ * {@link InMemoryFollowStore} keeps them in memory; {@link StorageEngine} picks one at startup.
+ */
+public interface FollowStore {
+    /**
+     * @return every follow relationship.
+     */
+    List<Follow> getAllFollows();
+
+    /**
+     * Records that one account follows another; recording an existing relationship again succeeds.
+     * 
+     * @return true if the relationship is recorded, false if either account does not exist.
+     */
+    boolean follow(int followerId, int followeeId);
+
+    /**
+     * @return true if a relationship was removed, false if there was none.
+     */
+    boolean unfollow(int followerId, int followeeId);
+}
@@ -0,0 +1,123 @@
+package DAO;
+
+import Model.Account;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The InMemoryAccountStore class keeps every account in memory, indexed by username and by account_id.
+ * Usernames are unique, as the account table's constraint makes them. Reads never lock.
+ *
+ * Writes are passed to a {@link ChangeLog}. They are rare, so they take one lock, which keeps the log in
+ * the order the changes were applied.
+ */
+public class InMemoryAccountStore implements AccountStore {
+    private final ConcurrentHashMap<String, Account> byUsername = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Account> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger lastAccountId = new AtomicInteger();
+    private final ChangeLog changeLog;
+
+    public InMemoryAccountStore() {
+        this(ChangeLog.NONE);
+    }
+
+    /**
+     * @param changeLog receives every change
+     */
+    public InMemoryAccountStore(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> accounts = new ArrayList<>(byId.size());
+        for (Account account : byId.values()) {
+            accounts.add(copy(account));
+        }
+        accounts.sort(Comparator.comparingInt(Account::getAccount_id));
+        return accounts;
+    }
+
+    @Override
+    public Account insertAccount(Account account) {
+        if (account.getUsername() == null) {
+            return null;
+        }
+        Account stored;
+        long lsn;
+        synchronized (this) {
+            stored = new Account(lastAccountId.incrementAndGet(), account.getUsername(), account.getPassword());
+            // an ID lost to a taken username leaves a gap, as an auto-increment column does
+            if (byUsername.putIfAbsent(stored.getUsername(), stored) != null) {
+                return null;
+            }
+            byId.put(stored.getAccount_id(), stored);
+            lsn = changeLog.accountPut(stored);
+        }
+        changeLog.awaitDurable(lsn);
+        return copy(stored);
+    }
+
+    @Override
+    public Account getAccountByUsername(String username) {
+        Account account = username == null ? null : byUsername.get(username);
+        return account == null ? null : copy(account);
+    }
+
+    @Override
+    public boolean updatePassword(int accountId, String password) {
+        long lsn;
+        synchronized (this) {
+            Account current = byId.get(accountId);
+            if (current == null) {
+                return false;
+            }
+            Account updated = new Account(accountId, current.getUsername(), password);
+            byId.put(accountId, updated);
+            byUsername.put(updated.getUsername(), updated);
+            lsn = changeLog.accountPut(updated);
+        }
+        changeLog.awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * @return true if an account with that ID exists
+     */
+    public boolean contains(int accountId) {
+        return byId.containsKey(accountId);
+    }
+
+    /**
+     * Adds an account with its existing ID, or replaces the account with that ID, without logging it.
+     * Used when loading from another store or replaying a log. Later inserts get larger IDs.
+     */
+    public synchronized void restore(Account account) {
+        Account stored = copy(account);
+        byUsername.put(stored.getUsername(), stored);
+        byId.put(stored.getAccount_id(), stored);
+        lastAccountId.accumulateAndGet(stored.getAccount_id(), Math::max);
+    }
+
+    /**
+     * @return the largest account_id handed out, which a snapshot records so IDs are not reused
+     */
+    public int getLastAccountId() {
+        return lastAccountId.get();
+    }
+
+    /**
+     * Makes later inserts get IDs larger than the given one, when loading a snapshot.
+     */
+    public void restoreLastAccountId(int accountId) {
+        lastAccountId.accumulateAndGet(accountId, Math::max);
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+}
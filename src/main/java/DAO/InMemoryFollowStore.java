@@ -0,0 +1,89 @@
+package DAO;
+
+import Model.Follow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The InMemoryFollowStore class keeps follow relationships in memory as a set of (follower_id, followee_id)
+ * pairs packed into longs. Both accounts must exist in the given account store, as the follow table's
+ * foreign keys require. Writes are passed to a {@link ChangeLog} under one lock, as in
+ * {@link InMemoryAccountStore}.
+ */
+public class InMemoryFollowStore implements FollowStore {
+    private final InMemoryAccountStore accounts;
+    private final ChangeLog changeLog;
+    private final Set<Long> follows = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param accounts the store follower and followee IDs are checked against
+     */
+    public InMemoryFollowStore(InMemoryAccountStore accounts) {
+        this(accounts, ChangeLog.NONE);
+    }
+
+    /**
+     * @param accounts the store follower and followee IDs are checked against
+     * @param changeLog receives every change
+     */
+    public InMemoryFollowStore(InMemoryAccountStore accounts, ChangeLog changeLog) {
+        this.accounts = accounts;
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public List<Follow> getAllFollows() {
+        List<Follow> result = new ArrayList<>(follows.size());
+        for (long pair : follows) {
+            result.add(new Follow((int) (pair >>> 32), (int) pair));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean follow(int followerId, int followeeId) {
+        if (!accounts.contains(followerId) || !accounts.contains(followeeId)) {
+            return false;
+        }
+        long lsn;
+        synchronized (this) {
+            if (!follows.add(pack(followerId, followeeId))) {
+                return true;
+            }
+            lsn = changeLog.followPut(followerId, followeeId);
+        }
+        changeLog.awaitDurable(lsn);
+        return true;
+    }
+
+    @Override
+    public boolean unfollow(int followerId, int followeeId) {
+        long lsn;
+        synchronized (this) {
+            if (!follows.remove(pack(followerId, followeeId))) {
+                return false;
+            }
+            lsn = changeLog.followDeleted(followerId, followeeId);
+        }
+        changeLog.awaitDurable(lsn);
+        return true;
+    }
+
+    /**
+     * Adds or removes a relationship without logging it, when loading from another store or replaying a log.
+     */
+    public synchronized void restore(int followerId, int followeeId, boolean following) {
+        if (following) {
+            follows.add(pack(followerId, followeeId));
+        } else {
+            follows.remove(pack(followerId, followeeId));
+        }
+    }
+
+    private static long pack(int followerId, int followeeId) {
+        return ((long) followerId << 32) | (followeeId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,500 @@
+package DAO;
+
+import Model.Message;
+import Util.IntObjectHashMap;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The InMemoryMessageStore class keeps every message in memory.
+ *
+ * Messages live in int-keyed hash maps split into lock stripes by message_id, so writers to different
+ * messages rarely contend and readers share a stripe. Two secondary indexes mirror the database's: each
+ * author's message_ids in order, striped by posted_by, and a sorted (time_posted_epoch, message_id) set for
+ * time-range queries. A message and its index entries are changed while its stripe is write-locked, so no
+ * reader sees an index entry for a message whose row is gone for good.
+ *
+ * posted_by must be an account of the given account store and message_text must fit the 255 characters of
+ * the message_text column, as the database requires.
+ *
+ * Every change is passed to a {@link ChangeLog} under the same stripe lock, and the write returns once the
+ * log reports it durable.
+ */
+public class InMemoryMessageStore implements MessageStore {
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private final InMemoryAccountStore accounts;
+    private final ChangeLog changeLog;
+    private final Stripe<Message>[] messageStripes;
+    private final Stripe<IdList>[] authorStripes;
+    private final ConcurrentSkipListSet<TimeKey> byTime = new ConcurrentSkipListSet<>();
+    private final AtomicInteger lastMessageId = new AtomicInteger();
+
+    /**
+     * @param accounts the store posted_by is checked against
+     * @param stripes the number of lock stripes, rounded up to a power of two
+     */
+    public InMemoryMessageStore(InMemoryAccountStore accounts, int stripes) {
+        this(accounts, stripes, ChangeLog.NONE);
+    }
+
+    /**
+     * @param accounts the store posted_by is checked against
+     * @param stripes the number of lock stripes, rounded up to a power of two
+     * @param changeLog receives every change
+     */
+    @SuppressWarnings("unchecked")
+    public InMemoryMessageStore(InMemoryAccountStore accounts, int stripes, ChangeLog changeLog) {
+        this.accounts = accounts;
+        this.changeLog = changeLog;
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        messageStripes = new Stripe[count];
+        authorStripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            messageStripes[i] = new Stripe<>();
+            authorStripes[i] = new Stripe<>();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        for (Stripe<Message> stripe : messageStripes) {
+            stripe.lock.readLock().lock();
+            try {
+                stripe.map.forEachValue(message -> messages.add(copy(message)));
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        messages.sort(Comparator.comparingInt(Message::getMessage_id));
+        return messages;
+    }
+
+    /**
+     * Collects the message_ids first and resolves them one at a time, so only the ids are held in memory
+     * at once. fetchSize is not used.
+     */
+    @Override
+    public void streamAllMessages(int fetchSize, RowCallback<Message> callback) throws IOException {
+        int[][] idsByStripe = new int[messageStripes.length][];
+        int total = 0;
+        for (int i = 0; i < messageStripes.length; i++) {
+            Stripe<Message> stripe = messageStripes[i];
+            stripe.lock.readLock().lock();
+            try {
+                idsByStripe[i] = stripe.map.keys();
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+            total += idsByStripe[i].length;
+        }
+        int[] ids = new int[total];
+        int n = 0;
+        for (int[] stripeIds : idsByStripe) {
+            System.arraycopy(stripeIds, 0, ids, n, stripeIds.length);
+            n += stripeIds.length;
+        }
+        Arrays.sort(ids);
+        for (int id : ids) {
+            Message message = get(id);
+            if (message != null) {
+                callback.accept(message);
+            }
+        }
+    }
+
+    /**
+     * Walks the IDs following afterMessageId up to the last one assigned, skipping deleted ones. IDs are
+     * handed out in sequence, so reading the whole store this way visits each ID once.
+     */
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        int last = lastMessageId.get();
+        for (int id = Math.max(afterMessageId, 0) + 1; id <= last && messages.size() < limit; id++) {
+            Message message = get(id);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        long[] lsn = new long[1];
+        Message inserted = insert(message, lsn);
+        changeLog.awaitDurable(lsn[0]);
+        return inserted;
+    }
+
+    /**
+     * Inserts each message as {@link #insertMessage(Message)} does, but waits for the change log once for
+     * the whole list.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        List<Message> inserted = new ArrayList<>(messages.size());
+        long[] lsn = new long[1];
+        for (Message message : messages) {
+            inserted.add(insert(message, lsn));
+        }
+        changeLog.awaitDurable(lsn[0]);
+        return inserted;
+    }
+
+    /**
+     * Adds a message with its existing ID, or replaces the message with that ID, without logging it. Used
+     * when loading from another store or replaying a log. Later inserts get larger IDs.
+     */
+    public void restore(Message message) {
+        Message stored = copy(message);
+        lastMessageId.accumulateAndGet(stored.getMessage_id(), Math::max);
+        delete(stored.getMessage_id(), null, false);
+        add(stored, false);
+    }
+
+    /**
+     * Removes a message without logging it, when replaying a log.
+     */
+    public void restoreDeletion(int messageId) {
+        delete(messageId, null, false);
+    }
+
+    /**
+     * @return the largest message_id handed out, which a snapshot records so IDs are not reused
+     */
+    public int getLastMessageId() {
+        return lastMessageId.get();
+    }
+
+    /**
+     * Makes later inserts get IDs larger than the given one, when loading a snapshot.
+     */
+    public void restoreLastMessageId(int messageId) {
+        lastMessageId.accumulateAndGet(messageId, Math::max);
+    }
+
+    @Override
+    public Optional<Message> getMessageById(int messageId) {
+        return Optional.ofNullable(get(messageId));
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(Integer[] messageIds) {
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (Integer messageId : messageIds) {
+            Message message = messageId == null ? null : get(messageId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByTimeRange(long since, long until, long afterTime, int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        Set<TimeKey> range = afterTime < since
+                ? byTime.tailSet(new TimeKey(since, Integer.MIN_VALUE), true)
+                : byTime.tailSet(new TimeKey(afterTime, afterMessageId), false);
+        for (TimeKey key : range) {
+            if (key.timePosted >= until || messages.size() >= limit) {
+                break;
+            }
+            Message message = get(key.messageId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Every message of each author is looked at, since an author's index is in message_id order and
+     * time_posted_epoch need not follow it.
+     */
+    @Override
+    public List<Message> getRecentMessagesByPosters(Integer[] postedBy, int limit) {
+        List<Message> messages = new ArrayList<>();
+        for (Integer author : new LinkedHashSet<>(Arrays.asList(postedBy))) {
+            if (author == null) {
+                continue;
+            }
+            int[] ids;
+            Stripe<IdList> stripe = authorStripes[stripeIndex(author)];
+            stripe.lock.readLock().lock();
+            try {
+                IdList list = stripe.map.get(author);
+                ids = list == null ? new int[0] : Arrays.copyOf(list.ids, list.size);
+            } finally {
+                stripe.lock.readLock().unlock();
+            }
+            for (int id : ids) {
+                Message message = get(id);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        messages.sort(Comparator.comparingLong(Message::getTime_posted_epoch)
+                .thenComparingInt(Message::getMessage_id).reversed());
+        return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+    }
+
+    @Override
+    public Message updateMessageText(int messageId, String newText) {
+        return update(messageId, null, newText);
+    }
+
+    @Override
+    public Message updateMessageText(int messageId, int postedBy, String newText) {
+        return update(messageId, postedBy, newText);
+    }
+
+    @Override
+    public boolean deleteMessage(int messageId) {
+        return delete(messageId, null, true) != null;
+    }
+
+    @Override
+    public Optional<Message> deleteAndReturnMessage(int messageId) {
+        return Optional.ofNullable(delete(messageId, null, true));
+    }
+
+    @Override
+    public Optional<Message> deleteAndReturnMessage(int messageId, int postedBy) {
+        return Optional.ofNullable(delete(messageId, postedBy, true));
+    }
+
+    @Override
+    public List<Message> getMessagesByUserId(int accountId) {
+        return getMessagesByUserId(accountId, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Message> getMessagesByUserId(int accountId, int afterMessageId, int limit) {
+        int[] page;
+        Stripe<IdList> stripe = authorStripes[stripeIndex(accountId)];
+        stripe.lock.readLock().lock();
+        try {
+            IdList ids = stripe.map.get(accountId);
+            page = ids == null ? new int[0] : ids.after(afterMessageId, limit);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+        List<Message> messages = new ArrayList<>(page.length);
+        for (int messageId : page) {
+            Message message = get(messageId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return a copy of the message, or null
+     */
+    private Message get(int messageId) {
+        Stripe<Message> stripe = messageStripes[stripeIndex(messageId)];
+        stripe.lock.readLock().lock();
+        try {
+            Message message = stripe.map.get(messageId);
+            return message == null ? null : copy(message);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param lsn receives the change log position of the insert, if it is made
+     * @return a copy of the stored message, or null if it was rejected
+     */
+    private Message insert(Message message, long[] lsn) {
+        if (!accounts.contains(message.getPosted_by()) || !fits(message.getMessage_text())) {
+            return null;
+        }
+        long timePosted = message.getTime_posted_epoch() > 0 ? message.getTime_posted_epoch() : Instant.now().getEpochSecond();
+        Message stored = new Message(lastMessageId.incrementAndGet(), message.getPosted_by(), message.getMessage_text(), timePosted);
+        lsn[0] = add(stored, true);
+        return copy(stored);
+    }
+
+    /**
+     * @return the change log position, or 0 if the change was not logged
+     */
+    private long add(Message message, boolean log) {
+        Stripe<Message> stripe = messageStripes[stripeIndex(message.getMessage_id())];
+        stripe.lock.writeLock().lock();
+        try {
+            stripe.map.put(message.getMessage_id(), message);
+            Stripe<IdList> authorStripe = authorStripes[stripeIndex(message.getPosted_by())];
+            authorStripe.lock.writeLock().lock();
+            try {
+                IdList ids = authorStripe.map.get(message.getPosted_by());
+                if (ids == null) {
+                    ids = new IdList();
+                    authorStripe.map.put(message.getPosted_by(), ids);
+                }
+                ids.add(message.getMessage_id());
+            } finally {
+                authorStripe.lock.writeLock().unlock();
+            }
+            byTime.add(new TimeKey(message.getTime_posted_epoch(), message.getMessage_id()));
+            return log ? changeLog.messagePut(message) : 0;
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param postedBy the account that must own the message, or null for any
+     */
+    private Message update(int messageId, Integer postedBy, String newText) {
+        if (!fits(newText)) {
+            return null;
+        }
+        Stripe<Message> stripe = messageStripes[stripeIndex(messageId)];
+        Message updated;
+        long lsn;
+        stripe.lock.writeLock().lock();
+        try {
+            Message current = stripe.map.get(messageId);
+            if (current == null || (postedBy != null && current.getPosted_by() != postedBy)) {
+                return null;
+            }
+            // author and time are unchanged, so the indexes are too
+            updated = new Message(messageId, current.getPosted_by(), newText, current.getTime_posted_epoch());
+            stripe.map.put(messageId, updated);
+            lsn = changeLog.messagePut(updated);
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        changeLog.awaitDurable(lsn);
+        return copy(updated);
+    }
+
+    /**
+     * @param postedBy the account that must own the message, or null for any
+     * @param log whether to pass the removal to the change log and wait for it
+     * @return the removed message, or null
+     */
+    private Message delete(int messageId, Integer postedBy, boolean log) {
+        Stripe<Message> stripe = messageStripes[stripeIndex(messageId)];
+        Message current;
+        long lsn;
+        stripe.lock.writeLock().lock();
+        try {
+            current = stripe.map.get(messageId);
+            if (current == null || (postedBy != null && current.getPosted_by() != postedBy)) {
+                return null;
+            }
+            stripe.map.remove(messageId);
+            Stripe<IdList> authorStripe = authorStripes[stripeIndex(current.getPosted_by())];
+            authorStripe.lock.writeLock().lock();
+            try {
+                IdList ids = authorStripe.map.get(current.getPosted_by());
+                ids.remove(messageId);
+                if (ids.size == 0) {
+                    authorStripe.map.remove(current.getPosted_by());
+                }
+            } finally {
+                authorStripe.lock.writeLock().unlock();
+            }
+            byTime.remove(new TimeKey(current.getTime_posted_epoch(), messageId));
+            lsn = log ? changeLog.messageDeleted(messageId) : 0;
+        } finally {
+            stripe.lock.writeLock().unlock();
+        }
+        changeLog.awaitDurable(lsn);
+        return current;
+    }
+
+    private int stripeIndex(int id) {
+        // ids are sequential; spread neighbours so bursts of new messages use different stripes
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (messageStripes.length - 1);
+    }
+
+    private static boolean fits(String text) {
+        return text == null || text.length() <= MAX_TEXT_LENGTH;
+    }
+
+    private static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+    }
+
+    private static class Stripe<V> {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final IntObjectHashMap<V> map = new IntObjectHashMap<>();
+    }
+
+    /**
+     * One author's message_ids in ascending order.
+     */
+    private static class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int messageId) {
+            // new messages have the largest id, so this is almost always an append
+            int position = size == 0 || ids[size - 1] < messageId ? size : -(Arrays.binarySearch(ids, 0, size, messageId) + 1);
+            if (position < 0) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = messageId;
+            size++;
+        }
+
+        void remove(int messageId) {
+            int position = Arrays.binarySearch(ids, 0, size, messageId);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                size--;
+            }
+        }
+
+        /**
+         * @return up to limit ids larger than afterMessageId, ascending
+         */
+        int[] after(int afterMessageId, int limit) {
+            int position = Arrays.binarySearch(ids, 0, size, afterMessageId);
+            int from = position >= 0 ? position + 1 : -(position + 1);
+            int to = (int) Math.min(size, (long) from + limit);
+            return Arrays.copyOfRange(ids, from, to);
+        }
+    }
+
+    private static class TimeKey implements Comparable<TimeKey> {
+        final long timePosted;
+        final int messageId;
+
+        TimeKey(long timePosted, int messageId) {
+            this.timePosted = timePosted;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = Long.compare(timePosted, other.timePosted);
+            return byTime != 0 ? byTime : Integer.compare(messageId, other.messageId);
+        }
+    }
+}
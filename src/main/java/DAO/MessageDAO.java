@@ -1,21 +1,68 @@
 package DAO;
 
 import Model.Message;
+import Util.ConnectionPool;
 import Util.ConnectionUtil;
+import Util.IdGenerator;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 import java.sql.*;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * The MessageDAO class mediates the transformation of Message data between Java objects and database rows.
  * It assumes a database table named 'message' with columns:
- * - id (int, primary key, auto-incremented),
+ * - id (int, primary key, assigned by an {@link IdGenerator} before the insert),
  * - account_id (int, foreign key referencing Account table),
  * - content (varchar).
+ * It is the JDBC implementation of {@link MessageStore}.
+ * Reads that serve requests use {@link ConnectionUtil#getReadConnection()}, and every write reports
+ * the rows it changed so reader databases copy them.
  */
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageDAO.class);
+
+    private final ConnectionPool shard;
+    private final IdGenerator messageIds;
+
+    /**
+     * Constructor for a MessageDAO on the main database, through {@link ConnectionUtil}, taking message IDs
+     * from {@link ConnectionUtil#getMessageIds()}.
+     */
+    public MessageDAO() {
+        this(ConnectionUtil.getMessageIds());
+    }
+
+    /**
+     * Constructor for a MessageDAO on the main database that takes message IDs from the given generator.
+     *
+     * @param messageIds assigns the ID of every inserted message
+     */
+    public MessageDAO(IdGenerator messageIds) {
+        this.shard = null;
+        this.messageIds = messageIds;
+    }
+
+    /**
+     * Constructor for a MessageDAO on one shard of {@link ShardedMessageStore}. Reads and writes both go to
+     * the shard's pool, and its changes are not shipped to the main database's readers. An inserted
+     * message's ID is the generator's next value with the bucket of its posted_by in the low bits, as the
+     * store's IDs are.
+     *
+     * @param shard the pool of the shard database
+     * @param messageIds the shard's message sequence
+     */
+    public MessageDAO(ConnectionPool shard, IdGenerator messageIds) {
+        this.shard = shard;
+        this.messageIds = messageIds;
+    }
 
     /**
      * Retrieves all messages from the message table.
@@ -23,9 +70,8 @@ public class MessageDAO {
      * @return a list of all Message objects.
      */
     public List<Message> getAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try {
+        try (Connection connection = readConnection()) {
             String sql = "SELECT * FROM message";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             ResultSet rs = preparedStatement.executeQuery();
@@ -39,39 +85,210 @@ public class MessageDAO {
                 messages.add(message);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.error("op=getAllMessages failed", e);
         }
         return messages;
     }
 
     /**
-     * Inserts a new message into the message table.
+     * Streams every message in the message table to the callback as rows are fetched,
+     * so memory use stays constant however large the table is. The query runs with H2's lazy
+     * execution, since an embedded H2 otherwise builds the whole result before the first row.
+     * 
+     * @param fetchSize the number of rows the driver fetches per round trip.
+     * @param callback receives each message in message_id order.
+     * @throws IOException if the callback fails to write a message, or the query fails part way;
+     *         either way the caller has not seen every message.
+     */
+    public void streamAllMessages(int fetchSize, RowCallback<Message> callback) throws IOException {
+        try (Connection connection = readConnection()) {
+            setLazyQueryExecution(connection, true);
+            try {
+                String sql = "SELECT * FROM message ORDER BY message_id";
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                preparedStatement.setFetchSize(fetchSize);
+                ResultSet rs = preparedStatement.executeQuery();
+                while (rs.next()) {
+                    callback.accept(new Message(
+                        rs.getInt("message_id"), 
+                        rs.getInt("posted_by"), 
+                        rs.getString("message_text"), 
+                        rs.getLong("time_posted_epoch")
+                    ));
+                }
+            } finally {
+                resetLazyQueryExecution(connection);
+            }
+        } catch (SQLException e) {
+            LOG.error("op=streamAllMessages failed", e);
+            throw new IOException("Streaming messages failed", e);
+        }
+    }
+
+    /**
+     * Retrieves the messages following a message_id, a chunk of the whole table.
+     * 
+     * @param afterMessageId only messages with a larger ID are returned; 0 starts from the first message.
+     * @param limit the maximum number of messages to return.
+     * @return up to limit messages, in message_id order.
+     * @throws IOException if the query fails, so a reader of the whole table can tell a failure from its end.
+     */
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = readConnection()) {
+            String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, afterMessageId);
+            preparedStatement.setInt(2, limit);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                Message message = new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                );
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            LOG.error("op=getMessagesAfter failed after={} limit={}", afterMessageId, limit, e);
+            throw new IOException("Reading messages failed", e);
+        }
+        return messages;
+    }
+
+    /**
+     * Turns H2's lazy query execution on or off for the connection's session, so a query's rows are
+     * computed as the result set advances instead of all at once.
+     */
+    static void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
+    }
+
+    /**
+     * Turns lazy query execution back off before the connection returns to its pool. A failure is
+     * logged rather than thrown, so it does not hide the outcome of the query.
+     */
+    static void resetLazyQueryExecution(Connection connection) {
+        try {
+            setLazyQueryExecution(connection, false);
+        } catch (SQLException e) {
+            LOG.warn("op=resetLazyQueryExecution failed reason={}", e.getMessage());
+        }
+    }
+
+    /**
+     * Inserts a new message into the message table, with an ID taken from the DAO's
+     * {@link IdGenerator} before the write, so no generated key is read back. A message
+     * without a time_posted_epoch (zero or negative) is stamped with the current time, in
+     * seconds since the epoch.
      * 
      * @param message the Message object to be persisted.
-     * @return the persisted Message with its generated ID, or null if insertion fails.
+     * @return the persisted Message with its assigned ID and time, or null if insertion fails.
      */
     public Message insertMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
         try {
-            String sql = "INSERT INTO message (posted_by, message_text) VALUES (?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-    
-            // Set parameters using the appropriate getter methods
-            preparedStatement.setInt(1, message.getPosted_by());
-            preparedStatement.setString(2, message.getMessage_text());
-    
-            preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if (pkeyResultSet.next()) {
-                int generated_message_id = pkeyResultSet.getInt(1);
-                return new Message(generated_message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
-            }
+            return insert(assignId(message));
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=insertMessage rejected posted_by={} reason={}", message.getPosted_by(), e.getMessage());
+            }
         }
         return null;
     }
 
+    /**
+     * Inserts several messages in one transaction using a JDBC batch, so a burst of posts
+     * pays the commit cost once. Every message gets its ID before the batch runs. If any
+     * row fails (for example an unknown posted_by), the batch is rolled back and the rows
+     * are inserted one at a time, keeping their IDs, so that each caller still gets its
+     * own result. Messages without a time_posted_epoch are stamped as in
+     * {@link #insertMessage(Message)}.
+     * 
+     * @param messages the Message objects to be persisted.
+     * @return the persisted Messages with their assigned IDs, in the same order as the
+     *         input; an element is null if that message could not be inserted.
+     */
+    public List<Message> insertMessages(List<Message> messages) {
+        List<Message> rows = new ArrayList<>(messages.size());
+        try {
+            for (Message message : messages) {
+                rows.add(assignId(message));
+            }
+        } catch (SQLException e) {
+            LOG.error("op=insertMessages failed assigning ids size={}", messages.size(), e);
+            return new ArrayList<>(Collections.nCopies(messages.size(), (Message) null));
+        }
+        try (Connection connection = connection()) {
+            String sql = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            connection.setAutoCommit(false);
+            try {
+                for (Message row : rows) {
+                    setRow(preparedStatement, row);
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+                for (Message row : rows) {
+                    rowChanged(row.getMessage_id());
+                }
+                return rows;
+            } catch (SQLException e) {
+                connection.rollback();
+                preparedStatement.clearBatch();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=insertMessages batch failed size={} reason={}", messages.size(), e.getMessage());
+            }
+        }
+
+        List<Message> inserted = new ArrayList<>(rows.size());
+        for (Message row : rows) {
+            try {
+                inserted.add(insert(row));
+            } catch (SQLException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("op=insertMessage rejected posted_by={} reason={}", row.getPosted_by(), e.getMessage());
+                }
+                inserted.add(null);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * @return a copy of the message with its ID and time_posted_epoch as they will be stored
+     */
+    private Message assignId(Message message) throws SQLException {
+        int id = shard == null ? messageIds.nextId()
+                : (messageIds.nextId() << ShardedMessageStore.BUCKET_BITS) | ShardedMessageStore.bucketOf(message.getPosted_by());
+        return new Message(id, message.getPosted_by(), message.getMessage_text(), timePosted(message));
+    }
+
+    private Message insert(Message row) throws SQLException {
+        try (Connection connection = connection()) {
+            String sql = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            setRow(preparedStatement, row);
+            preparedStatement.executeUpdate();
+        }
+        rowChanged(row.getMessage_id());
+        return row;
+    }
+
+    private static void setRow(PreparedStatement preparedStatement, Message row) throws SQLException {
+        preparedStatement.setInt(1, row.getMessage_id());
+        preparedStatement.setInt(2, row.getPosted_by());
+        preparedStatement.setString(3, row.getMessage_text());
+        preparedStatement.setLong(4, row.getTime_posted_epoch());
+    }
+
     /**
      * Retrieves a message by its ID.
      * 
@@ -79,8 +296,7 @@ public class MessageDAO {
      * @return an Optional containing the Message if found, otherwise an empty Optional.
      */
     public Optional<Message> getMessageById(int messageId) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        try (Connection connection = readConnection()) {
             String sql = "SELECT * FROM message WHERE message_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, messageId);
@@ -95,34 +311,169 @@ public class MessageDAO {
                 return Optional.of(message);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.error("op=getMessageById failed message_id={}", messageId, e);
         }
         return Optional.empty();
     }
 
     /**
-     * Updates the text of a message.
+     * Retrieves several messages by ID in one round trip.
+     * 
+     * @param messageIds the IDs of the messages.
+     * @return the messages found, in no particular order; missing IDs are skipped.
+     */
+    public List<Message> getMessagesByIds(Integer[] messageIds) {
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        try (Connection connection = readConnection()) {
+            String sql = "SELECT * FROM message WHERE message_id = ANY(?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setObject(1, messageIds);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                messages.add(new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+        } catch (SQLException e) {
+            LOG.error("op=getMessagesByIds failed count={}", messageIds.length, e);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves messages posted in a time range, oldest first. The (time_posted_epoch, message_id)
+     * index serves this as a range scan that stops after limit rows, already in order.
+     * 
+     * @param since the earliest time_posted_epoch returned, inclusive.
+     * @param until the latest time_posted_epoch returned, exclusive.
+     * @param afterTime with afterMessageId, the position of the last message of the previous page;
+     *        pass since and 0 for the first page.
+     * @param afterMessageId only messages posted at afterTime with a larger ID are returned.
+     * @param limit the maximum number of messages to return.
+     * @return up to limit messages, ordered by time_posted_epoch and then message_id.
+     */
+    public List<Message> getMessagesByTimeRange(long since, long until, long afterTime, int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = readConnection()) {
+            String sql = "SELECT * FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ? "
+                    + "AND (time_posted_epoch > ? OR message_id > ?) "
+                    + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setLong(1, Math.max(since, afterTime));
+            preparedStatement.setLong(2, until);
+            preparedStatement.setLong(3, afterTime);
+            preparedStatement.setInt(4, afterMessageId);
+            preparedStatement.setInt(5, limit);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                messages.add(new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+        } catch (SQLException e) {
+            LOG.error("op=getMessagesByTimeRange failed since={} until={} limit={}", since, until, limit, e);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves the newest messages of several accounts, for building a home timeline.
+     * 
+     * @param postedBy the IDs of the posting accounts.
+     * @param limit the maximum number of messages returned.
+     * @return the messages, newest first by time_posted_epoch and then message_id.
+     */
+    public List<Message> getRecentMessagesByPosters(Integer[] postedBy, int limit) {
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = readConnection()) {
+            String sql = "SELECT * FROM message WHERE posted_by = ANY(?) "
+                    + "ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setObject(1, postedBy);
+            preparedStatement.setInt(2, limit);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                messages.add(new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+        } catch (SQLException e) {
+            LOG.error("op=getRecentMessagesByPosters failed posters={} limit={}", postedBy.length, limit, e);
+        }
+        return messages;
+    }
+
+    /**
+     * Updates the text of a message and returns the updated row in the same round trip,
+     * using H2's FINAL TABLE to select the row as the UPDATE left it.
      * 
      * @param messageId the ID of the message to update.
      * @param newText the new content for the message.
      * @return the updated Message if successful, otherwise null.
      */
     public Message updateMessageText(int messageId, String newText) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
+        try (Connection connection = connection()) {
+            String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             // Set parameters
             preparedStatement.setString(1, newText);
             preparedStatement.setInt(2, messageId);
 
-            int rowsAffected = preparedStatement.executeUpdate();
-            if (rowsAffected > 0) {
-                return getMessageById(messageId).orElse(null);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                rowChanged(messageId);
+                return new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                );
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.error("op=updateMessageText failed message_id={}", messageId, e);
+        }
+        return null;
+    }
+
+    /**
+     * Updates the text of a message only if it was posted by the given account, returning
+     * the updated row in the same round trip.
+     * 
+     * @param messageId the ID of the message to update.
+     * @param postedBy the account that must own the message.
+     * @param newText the new content for the message.
+     * @return the updated Message, or null if no message with that ID belongs to the account.
+     */
+    public Message updateMessageText(int messageId, int postedBy, String newText) {
+        try (Connection connection = connection()) {
+            String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ? AND posted_by = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setString(1, newText);
+            preparedStatement.setInt(2, messageId);
+            preparedStatement.setInt(3, postedBy);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                rowChanged(messageId);
+                return new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                );
+            }
+        } catch (SQLException e) {
+            LOG.error("op=updateMessageText failed message_id={} posted_by={}", messageId, postedBy, e);
         }
         return null;
     }
@@ -134,19 +485,81 @@ public class MessageDAO {
      * @return true if the message was deleted, false otherwise.
      */
     public boolean deleteMessage(int messageId) {
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        try (Connection connection = connection()) {
             String sql = "DELETE FROM message WHERE message_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, messageId);
             int rowsAffected = preparedStatement.executeUpdate();
+            if (rowsAffected > 0) {
+                rowChanged(messageId);
+            }
             return rowsAffected > 0;
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.error("op=deleteMessage failed message_id={}", messageId, e);
             return false;
         }
     }
 
+    /**
+     * Deletes a message by its ID and returns the row that was removed, in one round trip,
+     * using H2's OLD TABLE to select the row as it was before the DELETE.
+     * 
+     * @param messageId the ID of the message to delete.
+     * @return an Optional containing the deleted Message, or an empty Optional if none matched.
+     */
+    public Optional<Message> deleteAndReturnMessage(int messageId) {
+        try (Connection connection = connection()) {
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, messageId);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                rowChanged(messageId);
+                Message message = new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                );
+                return Optional.of(message);
+            }
+        } catch (SQLException e) {
+            LOG.error("op=deleteAndReturnMessage failed message_id={}", messageId, e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Deletes a message only if it was posted by the given account, returning the removed
+     * row in the same round trip.
+     * 
+     * @param messageId the ID of the message to delete.
+     * @param postedBy the account that must own the message.
+     * @return an Optional containing the deleted Message, or an empty Optional if no message
+     *         with that ID belongs to the account.
+     */
+    public Optional<Message> deleteAndReturnMessage(int messageId, int postedBy) {
+        try (Connection connection = connection()) {
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ? AND posted_by = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, messageId);
+            preparedStatement.setInt(2, postedBy);
+            ResultSet rs = preparedStatement.executeQuery();
+            if (rs.next()) {
+                rowChanged(messageId);
+                return Optional.of(new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                ));
+            }
+        } catch (SQLException e) {
+            LOG.error("op=deleteAndReturnMessage failed message_id={} posted_by={}", messageId, postedBy, e);
+        }
+        return Optional.empty();
+    }
+
     /**
      * Retrieves all messages for a specific account.
      * 
@@ -154,12 +567,45 @@ public class MessageDAO {
      * @return a list of messages for the specified account.
      */
     public List<Message> getMessagesByUserId(int accountId) {
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
+        try (Connection connection = readConnection()) {
+            String sql = "SELECT * FROM message WHERE posted_by = ? ORDER BY message_id";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            preparedStatement.setInt(1, accountId);
+            ResultSet rs = preparedStatement.executeQuery();
+            while (rs.next()) {
+                Message message = new Message(
+                    rs.getInt("message_id"), 
+                    rs.getInt("posted_by"), 
+                    rs.getString("message_text"), 
+                    rs.getLong("time_posted_epoch")
+                );
+                messages.add(message);
+            }
+        } catch (SQLException e) {
+            LOG.error("op=getMessagesByUserId failed posted_by={}", accountId, e);
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieves one page of messages for a specific account, in message_id order.
+     * The (posted_by, message_id) index lets this seek directly to the page, so the cost
+     * does not grow with the number of messages the account has posted.
+     * 
+     * @param accountId the ID of the account whose messages are to be retrieved.
+     * @param afterMessageId only messages with a larger ID are returned; 0 starts from the first message.
+     * @param limit the maximum number of messages to return.
+     * @return up to limit messages for the specified account.
+     */
+    public List<Message> getMessagesByUserId(int accountId, int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        try (Connection connection = readConnection()) {
+            String sql = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
             preparedStatement.setInt(1, accountId);
+            preparedStatement.setInt(2, afterMessageId);
+            preparedStatement.setInt(3, limit);
             ResultSet rs = preparedStatement.executeQuery();
             while (rs.next()) {
                 Message message = new Message(
@@ -171,8 +617,26 @@ public class MessageDAO {
                 messages.add(message);
             }
         } catch (SQLException e) {
-            System.out.println(e.getMessage());
+            LOG.error("op=getMessagesByUserId failed posted_by={} after={} limit={}", accountId, afterMessageId, limit, e);
         }
         return messages;
     }
+
+    private static long timePosted(Message message) {
+        return message.getTime_posted_epoch() > 0 ? message.getTime_posted_epoch() : Instant.now().getEpochSecond();
+    }
+
+    private Connection connection() throws SQLException {
+        return shard == null ? ConnectionUtil.getConnection() : shard.getConnection();
+    }
+
+    private Connection readConnection() throws SQLException {
+        return shard == null ? ConnectionUtil.getReadConnection() : shard.getConnection();
+    }
+
+    private void rowChanged(int messageId) {
+        if (shard == null) {
+            ConnectionUtil.rowChanged("message", messageId);
+        }
+    }
 }
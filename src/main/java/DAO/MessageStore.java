@@ -0,0 +1,126 @@
+package DAO;
+
+import Model.Message;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Persistence operations on messages. {@link MessageDAO} implements them over JDBC,
+ * {@link InMemoryMessageStore} keeps every message in memory and {@link ShardedMessageStore} spreads them
+ * over several databases; {@link StorageEngine} picks one at startup.
+ *
+ * Implementations must be safe for concurrent use. Messages returned are copies the caller may modify.
+ */
+public interface MessageStore {
+    /**
+     * @return a list of all messages.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * Passes every message to the callback in message_id order without collecting them into a list.
+     * 
+     * @param fetchSize the number of rows fetched at a time, where the engine fetches in batches.
+     * @param callback receives each message.
+     * @throws IOException if the callback fails or the messages cannot be read; streaming stops part way.
+     */
+    void streamAllMessages(int fetchSize, RowCallback<Message> callback) throws IOException;
+
+    /**
+     * Reads all messages one bounded chunk at a time, for callers that must not hold a connection
+     * between chunks.
+     * 
+     * @param afterMessageId only messages with a larger ID are returned; 0 starts from the first message.
+     * @param limit the maximum number of messages to return.
+     * @return up to limit messages, in message_id order.
+     * @throws IOException if the messages cannot be read.
+     */
+    List<Message> getMessagesAfter(int afterMessageId, int limit) throws IOException;
+
+    /**
+     * Stores a new message with a generated ID. A message without a time_posted_epoch (zero or
+     * negative) is stamped with the current time, in seconds since the epoch.
+     * 
+     * @return the stored Message, or null if posted_by is not an account or the text does not fit.
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Stores several new messages, as {@link #insertMessage(Message)} does for each.
+     * 
+     * @return the stored Messages in input order; an element is null if that message was rejected.
+     */
+    List<Message> insertMessages(List<Message> messages);
+
+    /**
+     * @return the message with that ID, or an empty Optional.
+     */
+    Optional<Message> getMessageById(int messageId);
+
+    /**
+     * @return the messages found, in no particular order; missing IDs are skipped.
+     */
+    List<Message> getMessagesByIds(Integer[] messageIds);
+
+    /**
+     * Retrieves messages posted in a time range, ordered by time_posted_epoch and then message_id.
+     * 
+     * @param since the earliest time_posted_epoch returned, inclusive.
+     * @param until the latest time_posted_epoch returned, exclusive.
+     * @param afterTime with afterMessageId, the position of the last message of the previous page;
+     *        pass since and 0 for the first page.
+     * @param afterMessageId only messages posted at afterTime with a larger ID are returned.
+     * @param limit the maximum number of messages to return.
+     */
+    List<Message> getMessagesByTimeRange(long since, long until, long afterTime, int afterMessageId, int limit);
+
+    /**
+     * @param postedBy the IDs of the posting accounts.
+     * @param limit the maximum number of messages returned.
+     * @return the newest messages posted by any of the accounts, newest first by time_posted_epoch and
+     *         then message_id.
+     */
+    List<Message> getRecentMessagesByPosters(Integer[] postedBy, int limit);
+
+    /**
+     * @return the updated Message, or null if there is no message with that ID.
+     */
+    Message updateMessageText(int messageId, String newText);
+
+    /**
+     * Updates the text of a message only if it was posted by the given account.
+     * 
+     * @return the updated Message, or null if no message with that ID belongs to the account.
+     */
+    Message updateMessageText(int messageId, int postedBy, String newText);
+
+    /**
+     * @return true if the message was deleted.
+     */
+    boolean deleteMessage(int messageId);
+
+    /**
+     * @return the deleted Message, or an empty Optional if none matched.
+     */
+    Optional<Message> deleteAndReturnMessage(int messageId);
+
+    /**
+     * Deletes a message only if it was posted by the given account.
+     * 
+     * @return the deleted Message, or an empty Optional if no message with that ID belongs to the account.
+     */
+    Optional<Message> deleteAndReturnMessage(int messageId, int postedBy);
+
+    /**
+     * @return every message posted by the account, in message_id order.
+     */
+    List<Message> getMessagesByUserId(int accountId);
+
+    /**
+     * @param afterMessageId only messages with a larger ID are returned; 0 starts from the first message.
+     * @return up to limit messages posted by the account, in message_id order.
+     */
+    List<Message> getMessagesByUserId(int accountId, int afterMessageId, int limit);
+}
@@ -0,0 +1,17 @@
+package DAO;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time from a DAO method that streams its results instead of collecting them into a list.
+ *
+ * @param <T> the model type built from each row
+ */
+@FunctionalInterface
+public interface RowCallback<T> {
+    /**
+     * @param row the model object for the current row
+     * @throws IOException if the row could not be written to its destination; streaming stops
+     */
+    void accept(T row) throws IOException;
+}
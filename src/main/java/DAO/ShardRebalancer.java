@@ -0,0 +1,288 @@
+package DAO;
+
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ShardRebalancer class changes the number of shards of a {@link ShardedMessageStore} by moving every
+ * bucket whose shard changes. Message IDs carry their bucket, not their shard, so they stay valid.
+ *
+ * A bucket is copied to its new shard with MERGE and committed before it is deleted from the old one, and
+ * the new shard's message_seq is moved past the old shard's, so no ID the bucket ever used, including those
+ * of deleted messages, is handed out again. Each step can be repeated, so a rebalance that stopped part way
+ * is finished by running it again. The server must be stopped while it runs.
+ *
+ * Run it with the shard counts before and after, and storage.shard.url set as for the server:
+ * java -cp ... DAO.ShardRebalancer 4 8
+ *
+ * The sharded engine does not start while the main database holds messages. {@link #importMainDatabase}
+ * moves them into the shards, under new IDs, once, with the server stopped:
+ * java -cp ... DAO.ShardRebalancer import 4
+ */
+public final class ShardRebalancer {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardRebalancer.class);
+    private static final int COPY_BATCH = 1000;
+    // a literal, since H2 cannot type BITAND over two parameters
+    private static final int BUCKET_MASK = ShardedMessageStore.BUCKETS - 1;
+    // the maxvalue of message_seq in shard.sql
+    private static final int MAX_SEQUENCE = Integer.MAX_VALUE >>> ShardedMessageStore.BUCKET_BITS;
+
+    private ShardRebalancer() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: ShardRebalancer <shards before> <shards after>");
+            System.err.println("       ShardRebalancer import <shards>");
+            System.exit(2);
+        }
+        if ("import".equals(args[0])) {
+            List<ConnectionPool> shards = StorageEngine.openShards(Integer.parseInt(args[1]));
+            try {
+                long imported = importMainDatabase(ConnectionUtil.getPool(), shards);
+                System.out.println("imported " + imported + " messages into " + shards.size()
+                        + " shards; each message ID is now (old ID << 6) | bucket");
+            } finally {
+                for (ConnectionPool shard : shards) {
+                    shard.shutdown();
+                }
+            }
+            return;
+        }
+        int from = Integer.parseInt(args[0]);
+        int to = Integer.parseInt(args[1]);
+        List<ConnectionPool> shards = StorageEngine.openShards(Math.max(from, to));
+        try {
+            long moved = rebalance(shards, from, to);
+            System.out.println("moved " + moved + " messages from " + from + " to " + to + " shards");
+        } finally {
+            for (ConnectionPool shard : shards) {
+                shard.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @param shards the pools of every shard before and after, at least max(from, to) of them
+     * @param from the shard count the data is laid out for now
+     * @param to the shard count to lay it out for
+     * @return the number of messages moved
+     */
+    public static long rebalance(List<ConnectionPool> shards, int from, int to) {
+        if (from < 1 || to < 1 || from > ShardedMessageStore.BUCKETS || to > ShardedMessageStore.BUCKETS
+                || shards.size() < Math.max(from, to)) {
+            throw new IllegalArgumentException("Cannot rebalance " + shards.size() + " shards from " + from + " to " + to);
+        }
+        long moved = 0;
+        for (int bucket = 0; bucket < ShardedMessageStore.BUCKETS; bucket++) {
+            int source = ShardedMessageStore.shardOf(bucket, from);
+            int target = ShardedMessageStore.shardOf(bucket, to);
+            if (source != target) {
+                ShardedMessageStore.createSchema(shards.get(target));
+                try {
+                    long rows = moveBucket(bucket, shards.get(source), shards.get(target));
+                    LOG.info("op=rebalance bucket={} from_shard={} to_shard={} rows={}", bucket, source, target, rows);
+                    moved += rows;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Moving bucket " + bucket + " failed; run the rebalance again", e);
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Moves every message of the main database into the shards, with the server stopped. IDs that clients
+     * hold go stale, so it is never run automatically.
+     * A message's ID becomes its main database ID with the bucket of its posted_by in the low bits. Each
+     * batch is committed on its shards, with their message_seq moved past the imported IDs, before it is
+     * deleted from the main database, so an import that stopped part way is finished by running it again.
+     * Until it is, the sharded engine refuses to start.
+     *
+     * @param main the pool of the main database
+     * @param shards the pools of every shard, in shard order
+     * @return the number of messages imported; 0 once the main database has none
+     * @throws IllegalStateException if a message cannot be imported: its ID is too large for a shard
+     *         sequence, or a shard already holds a different message under the new ID
+     */
+    public static long importMainDatabase(ConnectionPool main, List<ConnectionPool> shards) {
+        long imported = 0;
+        try (Connection from = main.getConnection()) {
+            PreparedStatement select = from.prepareStatement("SELECT * FROM message ORDER BY message_id LIMIT ?");
+            select.setInt(1, COPY_BATCH);
+            PreparedStatement delete = from.prepareStatement("DELETE FROM message WHERE message_id = ?");
+            boolean schemaCreated = false;
+            while (true) {
+                Map<Integer, List<Message>> byShard = new HashMap<>();
+                List<Integer> mainIds = new ArrayList<>();
+                ResultSet rs = select.executeQuery();
+                while (rs.next()) {
+                    int mainId = rs.getInt("message_id");
+                    int postedBy = rs.getInt("posted_by");
+                    if (mainId < 1 || mainId > MAX_SEQUENCE) {
+                        throw new IllegalStateException("Message " + mainId + " of the main database does not fit a shard ID");
+                    }
+                    int bucket = ShardedMessageStore.bucketOf(postedBy);
+                    byShard.computeIfAbsent(ShardedMessageStore.shardOf(bucket, shards.size()), shard -> new ArrayList<>())
+                            .add(new Message((mainId << ShardedMessageStore.BUCKET_BITS) | bucket, postedBy,
+                                    rs.getString("message_text"), rs.getLong("time_posted_epoch")));
+                    mainIds.add(mainId);
+                }
+                if (mainIds.isEmpty()) {
+                    return imported;
+                }
+                if (!schemaCreated) {
+                    for (ConnectionPool shard : shards) {
+                        ShardedMessageStore.createSchema(shard);
+                    }
+                    schemaCreated = true;
+                }
+                for (Map.Entry<Integer, List<Message>> group : byShard.entrySet()) {
+                    importBatch(group.getValue(), group.getKey(), shards.get(group.getKey()));
+                }
+                for (int mainId : mainIds) {
+                    delete.setInt(1, mainId);
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+                for (int mainId : mainIds) {
+                    ConnectionUtil.rowChanged("message", mainId);
+                }
+                imported += mainIds.size();
+                LOG.info("op=importMainDatabase rows={} total={}", mainIds.size(), imported);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Importing the main database's messages failed; run the import again", e);
+        }
+    }
+
+    private static void importBatch(List<Message> messages, int shardIndex, ConnectionPool shard) throws SQLException {
+        try (Connection to = shard.getConnection()) {
+            Integer[] ids = new Integer[messages.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = messages.get(i).getMessage_id();
+            }
+            Map<Integer, Message> existing = new HashMap<>();
+            PreparedStatement select = to.prepareStatement("SELECT * FROM message WHERE message_id = ANY(?)");
+            select.setObject(1, ids);
+            ResultSet rs = select.executeQuery();
+            while (rs.next()) {
+                existing.put(rs.getInt("message_id"), new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch")));
+            }
+            PreparedStatement insert = to.prepareStatement(
+                    "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?)");
+            long maxSequence = 0;
+            for (Message message : messages) {
+                maxSequence = Math.max(maxSequence, message.getMessage_id() >>> ShardedMessageStore.BUCKET_BITS);
+                Message found = existing.get(message.getMessage_id());
+                if (found != null) {
+                    // copied by an import that stopped before deleting it from the main database
+                    if (!found.equals(message)) {
+                        throw new IllegalStateException("Shard " + shardIndex + " already holds message "
+                                + message.getMessage_id() + ", the new ID of main database message "
+                                + (message.getMessage_id() >>> ShardedMessageStore.BUCKET_BITS));
+                    }
+                    continue;
+                }
+                insert.setInt(1, message.getMessage_id());
+                insert.setInt(2, message.getPosted_by());
+                insert.setString(3, message.getMessage_text());
+                insert.setLong(4, message.getTime_posted_epoch());
+                insert.addBatch();
+            }
+            to.setAutoCommit(false);
+            try {
+                insert.executeBatch();
+                advanceSequence(to, maxSequence + 1);
+                to.commit();
+            } catch (SQLException e) {
+                to.rollback();
+                throw e;
+            } finally {
+                to.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static long moveBucket(int bucket, ConnectionPool source, ConnectionPool target) throws SQLException {
+        long rows = 0;
+        long maxSequence = 0;
+        try (Connection from = source.getConnection(); Connection to = target.getConnection()) {
+            long sourceSequence = nextSequence(from);
+            PreparedStatement select = from.prepareStatement(
+                    "SELECT * FROM message WHERE BITAND(message_id, " + BUCKET_MASK + ") = ? ORDER BY message_id");
+            select.setInt(1, bucket);
+            select.setFetchSize(COPY_BATCH);
+            PreparedStatement merge = to.prepareStatement("MERGE INTO message (message_id, posted_by, message_text, time_posted_epoch) "
+                    + "KEY (message_id) VALUES (?, ?, ?, ?)");
+            to.setAutoCommit(false);
+            try {
+                ResultSet rs = select.executeQuery();
+                while (rs.next()) {
+                    int messageId = rs.getInt("message_id");
+                    maxSequence = Math.max(maxSequence, messageId >>> ShardedMessageStore.BUCKET_BITS);
+                    merge.setInt(1, messageId);
+                    merge.setInt(2, rs.getInt("posted_by"));
+                    merge.setString(3, rs.getString("message_text"));
+                    merge.setLong(4, rs.getLong("time_posted_epoch"));
+                    merge.addBatch();
+                    if (++rows % COPY_BATCH == 0) {
+                        merge.executeBatch();
+                    }
+                }
+                merge.executeBatch();
+                advanceSequence(to, Math.max(maxSequence + 1, sourceSequence));
+                to.commit();
+            } catch (SQLException e) {
+                to.rollback();
+                throw e;
+            } finally {
+                to.setAutoCommit(true);
+            }
+            PreparedStatement delete = from.prepareStatement(
+                    "DELETE FROM message WHERE BITAND(message_id, " + BUCKET_MASK + ") = ?");
+            delete.setInt(1, bucket);
+            delete.executeUpdate();
+        }
+        return rows;
+    }
+
+    /**
+     * @return the value the shard's message_seq hands out next
+     */
+    private static long nextSequence(Connection connection) throws SQLException {
+        PreparedStatement current = connection.prepareStatement(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'MESSAGE_SEQ'");
+        ResultSet rs = current.executeQuery();
+        if (!rs.next()) {
+            throw new SQLException("The shard has no message_seq");
+        }
+        return rs.getLong(1);
+    }
+
+    /**
+     * Makes the shard's next sequence value at least next.
+     */
+    private static void advanceSequence(Connection connection, long next) throws SQLException {
+        if (nextSequence(connection) < next) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER SEQUENCE message_seq RESTART WITH " + next);
+            }
+        }
+    }
+}
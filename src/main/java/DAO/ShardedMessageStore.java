@@ -0,0 +1,416 @@
+package DAO;
+
+import Model.Message;
+import Util.ConnectionPool;
+import Util.SequenceIdGenerator;
+
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * The ShardedMessageStore class spreads the message table over several H2 databases, each its own file and
+ * lock, so writes to different shards never wait for each other.
+ *
+ * A message belongs to one of {@link #BUCKETS} buckets, chosen by hashing its posted_by, and bucket b lives
+ * on shard b % shardCount. Message IDs are (sequence << 6) | bucket, where the sequence comes from the
+ * shard's message_seq, so the shard of any ID is known without a lookup. An account's messages are all in
+ * one bucket: reading or inserting them touches exactly one shard. Reads across accounts are sent to every
+ * shard in parallel and merged.
+ *
+ * Accounts stay in the main database. Shards have no foreign key to them, so inserts check posted_by
+ * against it, remembering accounts already seen since accounts are never deleted.
+ *
+ * The bucket of an ID never changes, so {@link ShardRebalancer} can add shards by moving whole buckets.
+ * Each shard's sequence allows 2^25 inserts before inserts on it fail.
+ */
+public class ShardedMessageStore implements MessageStore {
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedMessageStore.class);
+
+    /**
+     * Fixed number of buckets; the most shards a store can have.
+     */
+    public static final int BUCKETS = 64;
+    static final int BUCKET_BITS = 6;
+
+    private static final Comparator<Message> BY_ID = Comparator.comparingInt(Message::getMessage_id);
+    private static final Comparator<Message> BY_TIME =
+            Comparator.comparingLong(Message::getTime_posted_epoch).thenComparingInt(Message::getMessage_id);
+
+    private final List<ConnectionPool> shards;
+    private final List<MessageDAO> shardDAOs = new ArrayList<>();
+    private final IntPredicate accountExists;
+    private final Set<Integer> knownAccounts = ConcurrentHashMap.newKeySet();
+    private final ExecutorService scatter;
+
+    /**
+     * @param shards the pools of the shard databases, in shard order
+     * @param accountExists checks that a posted_by names an account
+     */
+    public ShardedMessageStore(List<ConnectionPool> shards, IntPredicate accountExists) {
+        if (shards.isEmpty() || shards.size() > BUCKETS) {
+            throw new IllegalArgumentException("Shard count must be 1 to " + BUCKETS + ", was " + shards.size());
+        }
+        this.shards = List.copyOf(shards);
+        for (ConnectionPool shard : shards) {
+            shardDAOs.add(new MessageDAO(shard,
+                    new SequenceIdGenerator(shard, "message_seq", Integer.getInteger("db.idBlockSize", 100))));
+        }
+        this.accountExists = accountExists;
+        AtomicInteger count = new AtomicInteger();
+        this.scatter = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "db-shard-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the message table, its indexes and its ID sequence on every shard that lacks them.
+     */
+    public void createSchema() {
+        for (ConnectionPool shard : shards) {
+            createSchema(shard);
+        }
+    }
+
+    static void createSchema(ConnectionPool shard) {
+        try (Connection connection = shard.getConnection();
+             InputStream script = ShardedMessageStore.class.getClassLoader().getResourceAsStream("shard.sql")) {
+            RunScript.execute(connection, new InputStreamReader(script, StandardCharsets.UTF_8));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not create the shard schema", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the bucket of an account's messages; a hash, so consecutive account IDs spread over shards
+     */
+    public static int bucketOf(int postedBy) {
+        int h = postedBy * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (BUCKETS - 1);
+    }
+
+    /**
+     * @return the shard holding a bucket, for a store of the given size
+     */
+    public static int shardOf(int bucket, int shardCount) {
+        return bucket % shardCount;
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Stops the scatter threads and closes every shard's pool.
+     */
+    public void close() {
+        scatter.shutdownNow();
+        for (ConnectionPool shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    @Override
+    public List<Message> getAllMessages() {
+        return mergeAll(MessageDAO::getAllMessages, BY_ID, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Merges one sorted stream per shard, so messages reach the callback in message_id order while each
+     * shard holds only a fetch's worth of rows in memory.
+     */
+    @Override
+    public void streamAllMessages(int fetchSize, RowCallback<Message> callback) throws IOException {
+        List<Connection> connections = new ArrayList<>(shards.size());
+        PriorityQueue<ShardCursor> cursors = new PriorityQueue<>(Comparator.comparing(cursor -> cursor.current, BY_ID));
+        try {
+            for (ConnectionPool shard : shards) {
+                Connection connection = shard.getConnection();
+                connections.add(connection);
+                MessageDAO.setLazyQueryExecution(connection, true);
+                PreparedStatement statement = connection.prepareStatement("SELECT * FROM message ORDER BY message_id");
+                statement.setFetchSize(fetchSize);
+                ShardCursor cursor = new ShardCursor(statement.executeQuery());
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+            while (!cursors.isEmpty()) {
+                ShardCursor cursor = cursors.poll();
+                callback.accept(cursor.current);
+                if (cursor.advance()) {
+                    cursors.add(cursor);
+                }
+            }
+        } catch (SQLException e) {
+            LOG.error("op=streamAllMessages failed", e);
+            throw new IOException("Streaming messages failed", e);
+        } finally {
+            for (Connection connection : connections) {
+                MessageDAO.resetLazyQueryExecution(connection);
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    LOG.warn("op=streamAllMessages close failed reason={}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes up to limit messages from every shard and keeps the first limit of them by message_id.
+     */
+    @Override
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) throws IOException {
+        try {
+            return mergeAll(dao -> {
+                try {
+                    return dao.getMessagesAfter(afterMessageId, limit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, BY_ID, limit);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        if (!isAccount(message.getPosted_by())) {
+            return null;
+        }
+        return shardDAOs.get(shardOf(bucketOf(message.getPosted_by()), shards.size())).insertMessage(message);
+    }
+
+    /**
+     * Groups the messages by shard and writes each group as one JDBC batch, the shards in parallel.
+     */
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        Message[] inserted = new Message[messages.size()];
+        List<List<Integer>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (isAccount(message.getPosted_by())) {
+                byShard.get(shardOf(bucketOf(message.getPosted_by()), shards.size())).add(i);
+            }
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<Integer> indexes = byShard.get(shard);
+            if (!indexes.isEmpty()) {
+                MessageDAO dao = shardDAOs.get(shard);
+                writes.add(CompletableFuture.runAsync(() -> {
+                    List<Message> group = new ArrayList<>(indexes.size());
+                    for (int index : indexes) {
+                        group.add(messages.get(index));
+                    }
+                    List<Message> rows = dao.insertMessages(group);
+                    for (int i = 0; i < rows.size(); i++) {
+                        inserted[indexes.get(i)] = rows.get(i);
+                    }
+                }, scatter));
+            }
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+        List<Message> result = new ArrayList<>(inserted.length);
+        for (Message message : inserted) {
+            result.add(message);
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Message> getMessageById(int messageId) {
+        return shardFor(messageId).getMessageById(messageId);
+    }
+
+    @Override
+    public List<Message> getMessagesByIds(Integer[] messageIds) {
+        List<List<Integer>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Integer messageId : messageIds) {
+            byShard.get(shardIndexFor(messageId)).add(messageId);
+        }
+        List<CompletableFuture<List<Message>>> reads = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            Integer[] ids = byShard.get(shard).toArray(new Integer[0]);
+            if (ids.length > 0) {
+                MessageDAO dao = shardDAOs.get(shard);
+                reads.add(CompletableFuture.supplyAsync(() -> dao.getMessagesByIds(ids), scatter));
+            }
+        }
+        List<Message> messages = new ArrayList<>(messageIds.length);
+        for (CompletableFuture<List<Message>> read : reads) {
+            messages.addAll(read.join());
+        }
+        return messages;
+    }
+
+    @Override
+    public List<Message> getMessagesByTimeRange(long since, long until, long afterTime, int afterMessageId, int limit) {
+        return mergeAll(dao -> dao.getMessagesByTimeRange(since, until, afterTime, afterMessageId, limit), BY_TIME, limit);
+    }
+
+    /**
+     * IDs only order messages within a bucket, so the merge across shards is by time_posted_epoch, newest
+     * first, with message_id breaking ties.
+     */
+    @Override
+    public List<Message> getRecentMessagesByPosters(Integer[] postedBy, int limit) {
+        List<List<Integer>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Integer poster : postedBy) {
+            byShard.get(shardOf(bucketOf(poster), shards.size())).add(poster);
+        }
+        List<CompletableFuture<List<Message>>> reads = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            Integer[] posters = byShard.get(shard).toArray(new Integer[0]);
+            if (posters.length > 0) {
+                MessageDAO dao = shardDAOs.get(shard);
+                reads.add(CompletableFuture.supplyAsync(() -> dao.getRecentMessagesByPosters(posters, limit), scatter));
+            }
+        }
+        List<Message> recent = new ArrayList<>();
+        for (CompletableFuture<List<Message>> read : reads) {
+            recent.addAll(read.join());
+        }
+        recent.sort(BY_TIME.reversed());
+        return recent.size() > limit ? new ArrayList<>(recent.subList(0, limit)) : recent;
+    }
+
+    @Override
+    public Message updateMessageText(int messageId, String newText) {
+        return shardFor(messageId).updateMessageText(messageId, newText);
+    }
+
+    @Override
+    public Message updateMessageText(int messageId, int postedBy, String newText) {
+        return shardFor(messageId).updateMessageText(messageId, postedBy, newText);
+    }
+
+    @Override
+    public boolean deleteMessage(int messageId) {
+        return shardFor(messageId).deleteMessage(messageId);
+    }
+
+    @Override
+    public Optional<Message> deleteAndReturnMessage(int messageId) {
+        return shardFor(messageId).deleteAndReturnMessage(messageId);
+    }
+
+    @Override
+    public Optional<Message> deleteAndReturnMessage(int messageId, int postedBy) {
+        return shardFor(messageId).deleteAndReturnMessage(messageId, postedBy);
+    }
+
+    @Override
+    public List<Message> getMessagesByUserId(int accountId) {
+        return shardDAOs.get(shardOf(bucketOf(accountId), shards.size())).getMessagesByUserId(accountId);
+    }
+
+    @Override
+    public List<Message> getMessagesByUserId(int accountId, int afterMessageId, int limit) {
+        return shardDAOs.get(shardOf(bucketOf(accountId), shards.size()))
+                .getMessagesByUserId(accountId, afterMessageId, limit);
+    }
+
+    /**
+     * Runs a read on every shard in parallel and merges the sorted results.
+     */
+    private List<Message> mergeAll(Function<MessageDAO, List<Message>> read, Comparator<Message> order, int limit) {
+        List<CompletableFuture<List<Message>>> reads = new ArrayList<>(shardDAOs.size());
+        for (MessageDAO dao : shardDAOs) {
+            reads.add(CompletableFuture.supplyAsync(() -> read.apply(dao), scatter));
+        }
+        List<Message> merged = new ArrayList<>();
+        for (CompletableFuture<List<Message>> shardRead : reads) {
+            merged.addAll(shardRead.join());
+        }
+        merged.sort(order);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    private MessageDAO shardFor(int messageId) {
+        return shardDAOs.get(shardIndexFor(messageId));
+    }
+
+    private int shardIndexFor(int messageId) {
+        return shardOf(messageId & (BUCKETS - 1), shards.size());
+    }
+
+    private boolean isAccount(int accountId) {
+        if (knownAccounts.contains(accountId)) {
+            return true;
+        }
+        if (accountExists.test(accountId)) {
+            knownAccounts.add(accountId);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * One shard's rows in message_id order, for the streaming merge.
+     */
+    private static final class ShardCursor {
+        final ResultSet rs;
+        Message current;
+
+        ShardCursor(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        boolean advance() throws SQLException {
+            if (!rs.next()) {
+                return false;
+            }
+            current = new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                    rs.getString("message_text"), rs.getLong("time_posted_epoch"));
+            return true;
+        }
+    }
+}
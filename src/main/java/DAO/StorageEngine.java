@@ -0,0 +1,256 @@
+package DAO;
+
+import Model.Account;
+import Model.Follow;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The StorageEngine class picks the account, message and follow stores the services run on, chosen at
+ * startup with the storage.engine system property:
+ * - jdbc (the default): the DAOs, reading and writing the database on every call.
+ * - memory: {@link InMemoryAccountStore}, {@link InMemoryMessageStore} and {@link InMemoryFollowStore},
+ *   loaded from the database by {@link #open()} and served from RAM afterwards. Writes are not saved
+ *   back to the database, so they are lost on restart unless storage.wal.dir is set; without it the
+ *   engine refuses to start unless storage.memory.volatile=true accepts that. storage.memory.stripes sets
+ *   the number of message lock stripes.
+ * - sharded: accounts and follows through the DAOs, messages in a {@link ShardedMessageStore} over
+ *   storage.shards H2 databases (4 by default) at storage.shard.url, a pattern given the shard number
+ *   (jdbc:h2:./h2/shard%d; by default). Messages in the main database would not be read, so
+ *   {@link #open()} refuses to start while there are any; {@link ShardRebalancer} imports them, under new
+ *   IDs, and changes the shard count.
+ *
+ * Setting storage.wal.dir makes the memory engine durable with a {@link WriteAheadLog} in that directory:
+ * {@link #open()} recovers from it when it has data, and loads from the database and snapshots otherwise.
+ * storage.wal.segmentBytes (64 MB), storage.wal.fsync (true) and storage.wal.snapshotIntervalMs (60000)
+ * tune it.
+ */
+public class StorageEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(StorageEngine.class);
+    private static final int LOAD_FETCH_SIZE = 500;
+
+    private final String name;
+    private final AccountStore accountStore;
+    private final MessageStore messageStore;
+    private final FollowStore followStore;
+    private final WriteAheadLog writeAheadLog;
+
+    private StorageEngine(String name, AccountStore accountStore, MessageStore messageStore, FollowStore followStore,
+                          WriteAheadLog writeAheadLog) {
+        this.name = name;
+        this.accountStore = accountStore;
+        this.messageStore = messageStore;
+        this.followStore = followStore;
+        this.writeAheadLog = writeAheadLog;
+    }
+
+    /**
+     * @return a new engine of the kind named by the storage.engine system property
+     * @throws IllegalArgumentException if the name is not jdbc, memory or sharded
+     */
+    public static StorageEngine fromSystemProperties() {
+        return create(System.getProperty("storage.engine", "jdbc"));
+    }
+
+    /**
+     * @param name jdbc, memory or sharded
+     * @return a new engine; in-memory engines start empty until {@link #open()}
+     * @throws IllegalArgumentException if the name is not jdbc, memory or sharded, or it is memory without
+     *         storage.wal.dir or storage.memory.volatile=true
+     */
+    public static StorageEngine create(String name) {
+        String walDirectory = System.getProperty("storage.wal.dir");
+        if (walDirectory == null || walDirectory.isEmpty()) {
+            if ("memory".equals(name) && !Boolean.getBoolean("storage.memory.volatile")) {
+                throw new IllegalArgumentException("storage.engine=memory loses every write on restart without "
+                        + "storage.wal.dir; set storage.memory.volatile=true to run it anyway");
+            }
+            return create(name, null);
+        }
+        return create(name, Paths.get(walDirectory));
+    }
+
+    /**
+     * @param name jdbc, memory or sharded
+     * @param walDirectory where a memory engine keeps its write-ahead log, or null to keep writes only in
+     *        RAM; ignored by jdbc and sharded
+     * @return a new engine; in-memory engines start empty until {@link #open()}
+     * @throws IllegalArgumentException if the name is not jdbc, memory or sharded
+     */
+    public static StorageEngine create(String name, Path walDirectory) {
+        switch (name) {
+            case "jdbc":
+                return new StorageEngine(name, new AccountDAO(), new MessageDAO(), new FollowDAO(), null);
+            case "sharded":
+                AccountDAO accountDAO = new AccountDAO();
+                return new StorageEngine(name, accountDAO,
+                        new ShardedMessageStore(openShards(Integer.getInteger("storage.shards", 4)), accountDAO::accountExists),
+                        new FollowDAO(), null);
+            case "memory":
+                WriteAheadLog wal = walDirectory == null ? null : openWriteAheadLog(walDirectory);
+                ChangeLog changeLog = wal == null ? ChangeLog.NONE : wal;
+                InMemoryAccountStore accounts = new InMemoryAccountStore(changeLog);
+                InMemoryMessageStore messages = new InMemoryMessageStore(accounts,
+                        Integer.getInteger("storage.memory.stripes", 64), changeLog);
+                InMemoryFollowStore follows = new InMemoryFollowStore(accounts, changeLog);
+                if (wal != null) {
+                    wal.attach(accounts, messages, follows);
+                }
+                return new StorageEngine(name, accounts, messages, follows, wal);
+            default:
+                throw new IllegalArgumentException("Unknown storage.engine: " + name);
+        }
+    }
+
+    /**
+     * @return pools for the first count shard databases named by storage.shard.url
+     */
+    static List<ConnectionPool> openShards(int count) {
+        String pattern = System.getProperty("storage.shard.url", "jdbc:h2:./h2/shard%d;");
+        List<ConnectionPool> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(ConnectionUtil.openPool(String.format(pattern, i)));
+        }
+        return shards;
+    }
+
+    private static WriteAheadLog openWriteAheadLog(Path directory) {
+        try {
+            return new WriteAheadLog(directory, Integer.getInteger("storage.wal.segmentBytes", 64 << 20),
+                    Boolean.parseBoolean(System.getProperty("storage.wal.fsync", "true")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads an in-memory engine, from its write-ahead log if it has one with data and from the database
+     * otherwise, and creates the shard schema of a sharded engine; does nothing for the jdbc engine. Called
+     * once at startup, after the schema is migrated.
+     *
+     * @throws IllegalStateException if the engine is sharded and the main database still holds messages
+     */
+    public void open() {
+        if (messageStore instanceof ShardedMessageStore) {
+            ShardedMessageStore sharded = (ShardedMessageStore) messageStore;
+            long unsharded = countMainMessages();
+            if (unsharded > 0) {
+                throw new IllegalStateException("The main database holds " + unsharded + " messages, which the "
+                        + "sharded engine does not read; import them with DAO.ShardRebalancer import "
+                        + sharded.getShardCount() + ", which gives them new IDs, or use another engine");
+            }
+            sharded.createSchema();
+            LOG.info("op=open engine={} shards={}", name, sharded.getShardCount());
+            return;
+        }
+        if (!(messageStore instanceof InMemoryMessageStore)) {
+            return;
+        }
+        try {
+            if (writeAheadLog != null && writeAheadLog.recover()) {
+                writeAheadLog.startSnapshots(Long.getLong("storage.wal.snapshotIntervalMs", 60000));
+                return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (writeAheadLog == null) {
+            LOG.warn("op=open engine={} durable=false: writes are kept only in RAM and lost on restart", name);
+        }
+        InMemoryAccountStore accounts = (InMemoryAccountStore) accountStore;
+        InMemoryMessageStore messages = (InMemoryMessageStore) messageStore;
+        int accountCount = 0;
+        for (Account account : new AccountDAO().getAllAccounts()) {
+            accounts.restore(account);
+            accountCount++;
+        }
+        int[] messageCount = {0};
+        try {
+            new MessageDAO().streamAllMessages(LOAD_FETCH_SIZE, message -> {
+                messages.restore(message);
+                messageCount[0]++;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int followCount = 0;
+        for (Follow follow : new FollowDAO().getAllFollows()) {
+            ((InMemoryFollowStore) followStore).restore(follow.getFollower_id(), follow.getFollowee_id(), true);
+            followCount++;
+        }
+        LOG.info("op=open engine={} accounts={} messages={} follows={}", name, accountCount, messageCount[0], followCount);
+        if (writeAheadLog != null) {
+            try {
+                // the loaded rows were not logged, so the first snapshot is what makes them durable
+                writeAheadLog.snapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            writeAheadLog.startSnapshots(Long.getLong("storage.wal.snapshotIntervalMs", 60000));
+        }
+    }
+
+    private static long countMainMessages() {
+        try (Connection connection = ConnectionUtil.getPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM message")) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not count the main database's messages", e);
+        }
+    }
+
+    /**
+     * Stops snapshots and forces the write-ahead log to disk, if the engine has one, and closes the shards
+     * of a sharded engine.
+     */
+    public void close() {
+        if (writeAheadLog != null) {
+            writeAheadLog.close();
+        }
+        if (messageStore instanceof ShardedMessageStore) {
+            ((ShardedMessageStore) messageStore).close();
+        }
+    }
+
+    /**
+     * @return jdbc, memory or sharded
+     */
+    public String getName() {
+        return name;
+    }
+
+    public AccountStore getAccountStore() {
+        return accountStore;
+    }
+
+    public MessageStore getMessageStore() {
+        return messageStore;
+    }
+
+    public FollowStore getFollowStore() {
+        return followStore;
+    }
+
+    /**
+     * @return the engine's write-ahead log, or null if it has none
+     */
+    public WriteAheadLog getWriteAheadLog() {
+        return writeAheadLog;
+    }
+}
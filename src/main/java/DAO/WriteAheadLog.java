@@ -0,0 +1,415 @@
+package DAO;
+
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Util.SegmentedLog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * The WriteAheadLog class makes the in-memory stores durable. Every change they make is appended to a
+ * {@link SegmentedLog}, and writes return once their record is on disk; concurrent writers share one fsync.
+ *
+ * Snapshots bound recovery time. A snapshot is written from the live stores without stopping writers: it
+ * records the log position first and then copies every row. Rows changed while it is being written may be
+ * copied in either state, which is harmless, because every log record holds the whole new state of its row
+ * and recovery replays all records after that position over the snapshot. The two newest snapshots are
+ * kept, and log segments older than the older of them are deleted.
+ *
+ * Recovery loads the newest snapshot that is complete and passes its checksums, then replays the log tail.
+ */
+public class WriteAheadLog implements ChangeLog, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final byte ACCOUNT_PUT = 1;
+    private static final byte MESSAGE_PUT = 2;
+    private static final byte MESSAGE_DELETE = 3;
+    private static final byte FOLLOW_PUT = 4;
+    private static final byte FOLLOW_DELETE = 5;
+    private static final byte SNAPSHOT_HEADER = 6;
+    private static final byte SNAPSHOT_END = 7;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOTS_KEPT = 2;
+    // type, length, CRC32C over type and payload
+    private static final int SNAPSHOT_RECORD_HEADER_BYTES = 9;
+
+    private final Path directory;
+    private final SegmentedLog log;
+    private InMemoryAccountStore accounts;
+    private InMemoryMessageStore messages;
+    private InMemoryFollowStore follows;
+    private ScheduledExecutorService snapshotter;
+    private volatile long snapshotLsn = -1;
+
+    /**
+     * @param directory where the log segments and snapshots live
+     * @param segmentBytes the size of each log segment file
+     * @param fsync whether writes wait for their record to reach the disk
+     */
+    public WriteAheadLog(Path directory, int segmentBytes, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.log = new SegmentedLog(directory, segmentBytes, fsync);
+    }
+
+    /**
+     * Sets the stores that snapshots are taken from and recovery loads into. Called once, after the stores
+     * are built with this log.
+     */
+    public void attach(InMemoryAccountStore accounts, InMemoryMessageStore messages, InMemoryFollowStore follows) {
+        this.accounts = accounts;
+        this.messages = messages;
+        this.follows = follows;
+    }
+
+    @Override
+    public long accountPut(Account account) {
+        return append(ACCOUNT_PUT, encodeAccount(account));
+    }
+
+    @Override
+    public long messagePut(Message message) {
+        return append(MESSAGE_PUT, encodeMessage(message));
+    }
+
+    @Override
+    public long messageDeleted(int messageId) {
+        return append(MESSAGE_DELETE, ByteBuffer.allocate(4).putInt(messageId));
+    }
+
+    @Override
+    public long followPut(int followerId, int followeeId) {
+        return append(FOLLOW_PUT, ByteBuffer.allocate(8).putInt(followerId).putInt(followeeId));
+    }
+
+    @Override
+    public long followDeleted(int followerId, int followeeId) {
+        return append(FOLLOW_DELETE, ByteBuffer.allocate(8).putInt(followerId).putInt(followeeId));
+    }
+
+    @Override
+    public void awaitDurable(long lsn) {
+        log.awaitDurable(lsn);
+    }
+
+    /**
+     * Loads the newest valid snapshot and replays the log after it into the attached stores.
+     *
+     * @return false if there was nothing to recover, as on the first start in a directory
+     * @throws IllegalStateException if log segments are missing between the snapshot and the log tail
+     */
+    public boolean recover() throws IOException {
+        long started = System.nanoTime();
+        long fromLsn = 0;
+        boolean loaded = false;
+        for (Path snapshot : snapshots()) {
+            try {
+                fromLsn = loadSnapshot(snapshot);
+                loaded = true;
+                break;
+            } catch (IOException e) {
+                LOG.warn("op=recover skipping snapshot={} reason={}", snapshot.getFileName(), e.getMessage());
+            }
+        }
+        if (log.getFirstLsn() > fromLsn) {
+            throw new IllegalStateException("Write-ahead log in " + directory + " is missing records before "
+                    + log.getFirstLsn() + " and no snapshot covers them");
+        }
+        long replayed = log.replay(fromLsn, (type, payload, endLsn) -> apply(type, payload));
+        snapshotLsn = loaded ? fromLsn : -1;
+        LOG.info("op=recover snapshot_lsn={} replayed={} millis={}", fromLsn, replayed,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return loaded || replayed > 0;
+    }
+
+    /**
+     * Writes a snapshot of the attached stores and deletes the log segments it makes unnecessary.
+     *
+     * @return the log position the snapshot covers
+     */
+    public synchronized long snapshot() throws IOException {
+        long started = System.nanoTime();
+        // read before any row is copied; every change after it is replayed over the snapshot
+        long lsn = log.getAppendedLsn();
+        Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, lsn, SNAPSHOT_SUFFIX));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        long[] count = {0};
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            writeRecord(out, SNAPSHOT_HEADER, ByteBuffer.allocate(16)
+                    .putLong(lsn).putInt(accounts.getLastAccountId()).putInt(messages.getLastMessageId()));
+            for (Account account : accounts.getAllAccounts()) {
+                writeRecord(out, ACCOUNT_PUT, encodeAccount(account));
+                count[0]++;
+            }
+            messages.streamAllMessages(0, message -> {
+                writeRecord(out, MESSAGE_PUT, encodeMessage(message));
+                count[0]++;
+            });
+            for (Follow follow : follows.getAllFollows()) {
+                writeRecord(out, FOLLOW_PUT, ByteBuffer.allocate(8).putInt(follow.getFollower_id()).putInt(follow.getFollowee_id()));
+                count[0]++;
+            }
+            writeRecord(out, SNAPSHOT_END, ByteBuffer.allocate(8).putLong(count[0]));
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        snapshotLsn = lsn;
+
+        List<Path> snapshots = snapshots();
+        for (int i = SNAPSHOTS_KEPT; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        long oldestKept = snapshotLsnOf(snapshots.get(Math.min(SNAPSHOTS_KEPT, snapshots.size()) - 1));
+        int deleted = log.deleteBefore(oldestKept);
+        LOG.info("op=snapshot lsn={} rows={} segments_deleted={} millis={}", lsn, count[0], deleted,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return lsn;
+    }
+
+    /**
+     * Takes a snapshot every interval in which the log has grown.
+     */
+    public synchronized void startSnapshots(long intervalMillis) {
+        if (snapshotter != null) {
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                if (log.getAppendedLsn() != snapshotLsn) {
+                    snapshot();
+                }
+            } catch (IOException | RuntimeException e) {
+                LOG.error("op=snapshot failed", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the log this change log appends to, for its counters
+     */
+    public SegmentedLog getLog() {
+        return log;
+    }
+
+    /**
+     * Stops taking snapshots and forces the log to disk.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (snapshotter != null) {
+                snapshotter.shutdownNow();
+                snapshotter = null;
+            }
+        }
+        log.close();
+    }
+
+    private long append(byte type, ByteBuffer payload) {
+        try {
+            return log.append(type, payload.array());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void apply(byte type, ByteBuffer payload) {
+        switch (type) {
+            case ACCOUNT_PUT:
+                accounts.restore(new Account(payload.getInt(), getString(payload), getString(payload)));
+                break;
+            case MESSAGE_PUT:
+                int messageId = payload.getInt();
+                int postedBy = payload.getInt();
+                long timePosted = payload.getLong();
+                messages.restore(new Message(messageId, postedBy, getString(payload), timePosted));
+                break;
+            case MESSAGE_DELETE:
+                messages.restoreDeletion(payload.getInt());
+                break;
+            case FOLLOW_PUT:
+                follows.restore(payload.getInt(), payload.getInt(), true);
+                break;
+            case FOLLOW_DELETE:
+                follows.restore(payload.getInt(), payload.getInt(), false);
+                break;
+            default:
+                throw new IllegalStateException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    /**
+     * @return the log position the snapshot covers
+     * @throws IOException if the snapshot is truncated or fails a checksum; nothing is loaded then
+     */
+    private long loadSnapshot(Path snapshot) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(snapshot)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        // the whole file is verified before anything is applied
+        ByteBuffer header = nextRecord(data, SNAPSHOT_HEADER);
+        long rows = 0;
+        while (true) {
+            byte type = data.get(data.position());
+            ByteBuffer payload = nextRecord(data, type);
+            if (type == SNAPSHOT_END) {
+                if (payload.getLong() != rows) {
+                    throw new IOException("Snapshot row count does not match");
+                }
+                break;
+            }
+            rows++;
+        }
+        long lsn = header.getLong();
+        int lastAccountId = header.getInt();
+        int lastMessageId = header.getInt();
+        data.position(0);
+        nextRecord(data, SNAPSHOT_HEADER);
+        for (long i = 0; i < rows; i++) {
+            byte type = data.get(data.position());
+            apply(type, nextRecord(data, type));
+        }
+        accounts.restoreLastAccountId(lastAccountId);
+        messages.restoreLastMessageId(lastMessageId);
+        return lsn;
+    }
+
+    /**
+     * Reads the record at the buffer's position and moves past it.
+     *
+     * @return the record's payload
+     */
+    private static ByteBuffer nextRecord(ByteBuffer data, byte expectedType) throws IOException {
+        if (data.remaining() < SNAPSHOT_RECORD_HEADER_BYTES) {
+            throw new IOException("Snapshot is truncated");
+        }
+        int start = data.position();
+        byte type = data.get(start);
+        int length = data.getInt(start + 1);
+        int crc = data.getInt(start + 5);
+        if (type != expectedType) {
+            throw new IOException("Unexpected snapshot record type " + type);
+        }
+        if (length < 0 || length > data.remaining() - SNAPSHOT_RECORD_HEADER_BYTES) {
+            throw new IOException("Snapshot is truncated");
+        }
+        ByteBuffer payload = data.slice(start + SNAPSHOT_RECORD_HEADER_BYTES, length);
+        CRC32C check = new CRC32C();
+        check.update(type);
+        check.update(payload.duplicate());
+        if ((int) check.getValue() != crc) {
+            throw new IOException("Snapshot record fails its checksum");
+        }
+        data.position(start + SNAPSHOT_RECORD_HEADER_BYTES + length);
+        return payload;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, ByteBuffer payload) throws IOException {
+        byte[] bytes = payload.array();
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(bytes);
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    private static ByteBuffer encodeAccount(Account account) {
+        byte[] username = utf8(account.getUsername());
+        byte[] password = utf8(account.getPassword());
+        ByteBuffer payload = ByteBuffer.allocate(12 + length(username) + length(password));
+        payload.putInt(account.getAccount_id());
+        putString(payload, username);
+        putString(payload, password);
+        return payload;
+    }
+
+    private static ByteBuffer encodeMessage(Message message) {
+        byte[] text = utf8(message.getMessage_text());
+        ByteBuffer payload = ByteBuffer.allocate(20 + length(text));
+        payload.putInt(message.getMessage_id());
+        payload.putInt(message.getPosted_by());
+        payload.putLong(message.getTime_posted_epoch());
+        putString(payload, text);
+        return payload;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        // -1 marks null
+        buffer.putInt(value == null ? -1 : value.length);
+        if (value != null) {
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the snapshot files, newest first
+     */
+    private List<Path> snapshots() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                snapshots.add(file);
+            }
+        }
+        snapshots.sort((a, b) -> Long.compare(snapshotLsnOf(b), snapshotLsnOf(a)));
+        return snapshots;
+    }
+
+    private static long snapshotLsnOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
@@ -2,15 +2,47 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import DAO.AccountStore;
+import Util.BloomFilter;
+import Util.ExpiringCache;
+import Util.IntBitmap;
+import Util.ReadConsistency;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The AccountService class handles business logic related to accounts, 
  * sitting between the controller and persistence layer (DAO).
+ *
+ * Passwords are stored as hashes produced by {@link PasswordHasher}. Accounts still
+ * holding a plaintext or outdated hash are upgraded the next time they log in.
+ *
+ * Usernames are tracked in memory so most registration duplicate checks skip the database:
+ * a Bloom filter (sized by account.bloom.expected and account.bloom.fpp) says when a name is
+ * definitely free, and a bounded username cache (account.cache.size entries, account.cache.ttlMs
+ * milliseconds) says when it is known taken. Both are filled by {@link #warmUp()}. The unique
+ * constraint on username remains the final authority.
+ *
+ * Every account id is also kept in an {@link IntBitmap}, so the controller can reject
+ * messages from unknown posters without a database round trip.
  */
 public class AccountService {
-    private AccountDAO accountDAO;
+    private static final Logger LOG = LoggerFactory.getLogger(AccountService.class);
+    private AccountStore accountDAO;
+    private final DatabaseExecutor databaseExecutor = DatabaseExecutor.shared();
+    private final PasswordHasher passwordHasher = PasswordHasher.shared();
+    private static final int ACCOUNT_CACHE_SIZE = Integer.getInteger("account.cache.size", 10_000);
+    private final BloomFilter usernames = new BloomFilter(
+            Long.getLong("account.bloom.expected", 1_000_000),
+            Double.parseDouble(System.getProperty("account.bloom.fpp", "0.01")));
+    private final ExpiringCache<String, Account> accountCache = new ExpiringCache<>(
+            ACCOUNT_CACHE_SIZE, Long.getLong("account.cache.ttlMs", 600_000));
+    private final IntBitmap accountIds = new IntBitmap();
+    private volatile boolean accountIdsLoaded;
 
     /**
      * No-args constructor for creating a new AccountService with a new AccountDAO.
@@ -20,12 +52,12 @@ public class AccountService {
     }
 
     /**
-     * Constructor for AccountService when an AccountDAO is provided.
-     * Used in testing with a mock AccountDAO to test AccountService independently.
+     * Constructor for AccountService when an AccountStore is provided, such as one from a
+     * {@link DAO.StorageEngine} or a mock used to test AccountService independently.
      * 
-     * @param accountDAO the AccountDAO to be used by this service
+     * @param accountDAO the AccountStore to be used by this service
      */
-    public AccountService(AccountDAO accountDAO) {
+    public AccountService(AccountStore accountDAO) {
         this.accountDAO = accountDAO;
     }
 
@@ -39,38 +71,169 @@ public class AccountService {
     }
 
     /**
-     * Persists a new account. 
+     * Loads every existing username into the Bloom filter, and as many accounts as fit
+     * into the username cache. Called once at startup.
+     */
+    public void warmUp() {
+        List<Account> accounts = accountDAO.getAllAccounts();
+        int cached = 0;
+        for (Account account : accounts) {
+            accountIds.add(account.getAccount_id());
+            usernames.put(account.getUsername());
+            if (cached++ < ACCOUNT_CACHE_SIZE) {
+                accountCache.put(account.getUsername(), account);
+            }
+        }
+        accountIdsLoaded = true;
+        LOG.info("op=warmUp accounts={} accountIdBytes={}", accounts.size(), accountIds.getAllocatedBytes());
+    }
+
+    /**
+     * Checks an account id against the in-memory id set. Until {@link #warmUp()} has run the
+     * set is incomplete, so every id is reported as existing and the foreign key decides.
+     * 
+     * @param accountId the ID of the account
+     * @return false if no account with that ID exists, true otherwise
+     */
+    public boolean accountExists(int accountId) {
+        return !accountIdsLoaded || accountIds.contains(accountId);
+    }
+
+    /**
+     * Persists a new account, storing a hash of its password. 
      * 
      * @param account an Account object to be added
-     * @return the persisted Account if successful, otherwise null
+     * @return the persisted Account, carrying the password as the caller supplied it, if
+     *         successful, otherwise null
      */
     public Account createAccount(Account account) {
-        // Check if the username already exists
-        // Account existingAccount = accountDAO.getAccountByUsername(account);
-        // if (existingAccount != null) {
-        //     return null; // Return null if the username is already taken
-        // }
-        return accountDAO.insertAccount(account); // Insert new account if username is unique
+        String username = account.getUsername();
+        // Checked before hashing, so a duplicate costs neither a hash nor a failed INSERT
+        if (isUsernameTaken(username)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=createAccount rejected reason=taken");
+            }
+            return null;
+        }
+        Account hashed = new Account(username, passwordHasher.hash(account.getPassword()));
+        // The unique constraint on username still rejects duplicates the filter missed
+        Account created = accountDAO.insertAccount(hashed);
+        usernames.put(username);
+        if (created == null) {
+            return null;
+        }
+        accountIds.add(created.getAccount_id());
+        accountCache.put(username, created);
+        return new Account(created.getAccount_id(), username, account.getPassword());
+    }
+
+    /**
+     * Answers from memory when it can: a username the Bloom filter has never seen is free,
+     * and one in the cache is taken. Only a Bloom filter hit that is not cached costs a lookup.
+     */
+    private boolean isUsernameTaken(String username) {
+        if (!usernames.mightContain(username)) {
+            return false;
+        }
+        return accountCache.get(username, this::loadAccount) != null;
     }
     
 
+    /**
+     * Loads an account into the username cache. Every session shares the cache, so the row is read from
+     * a reader database only if it has every write so far.
+     */
+    private Account loadAccount(String username) {
+        return ReadConsistency.latest(() -> accountDAO.getAccountByUsername(username));
+    }
+
     /**
      * Authenticates a user based on username and password.
      * 
      * @param username the username of the account
      * @param password the password of the account
-     * @return true if the credentials are valid, false otherwise
+     * @return the Account, carrying the password as the caller supplied it, if the
+     *         credentials are valid, otherwise null
      */
-    public Account login(String username) {
-        System.out.println("Attempting login for username: " + username);
-        Account account = accountDAO.getAccountByUsername(username);
-        // if (account == null) {
-        //     System.out.println("No account found with username: " + username);
-        //     return null;
-        // }
-        // System.out.println("Account found: " + account.getUsername() + ", Password Match: " + password.equals(account.getPassword()));
-        return account;
+    public Account login(String username, String password) {
+        Account account = accountCache.get(username, this::loadAccount);
+        if (account == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=login found=false");
+            }
+            return null;
+        }
+        return completeLogin(account, password, passwordHasher.verify(password, account.getPassword()));
+    }
+
+    private Account completeLogin(Account account, String password, PasswordHasher.Verification verification) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("op=login found=true account_id={} result={}", account.getAccount_id(), verification);
+        }
+        if (!verification.isValid()) {
+            return null;
+        }
+        if (verification.needsRehash()) {
+            upgradePassword(account, password);
+        }
+        return new Account(account.getAccount_id(), account.getUsername(), password);
+    }
+
+    /**
+     * Replaces a plaintext or outdated stored password with a current hash, in the
+     * background so the login that triggered it does not wait for a second hash.
+     */
+    private void upgradePassword(Account account, String password) {
+        passwordHasher.hashAsync(password)
+                .thenAccept(hash -> {
+                    if (accountDAO.updatePassword(account.getAccount_id(), hash)) {
+                        accountCache.put(account.getUsername(), new Account(account.getAccount_id(), account.getUsername(), hash));
+                    }
+                })
+                .exceptionally(e -> {
+                    // the next successful login tries again
+                    LOG.warn("op=upgradePassword failed account_id={}", account.getAccount_id(), e);
+                    return null;
+                });
+    }
+
+    /**
+     * @return the Bloom filter of known usernames
+     */
+    public BloomFilter getUsernameFilter() {
+        return usernames;
+    }
+
+    /**
+     * @return the username cache, for reading its hit ratio, eviction and load-latency metrics
+     */
+    public ExpiringCache<String, Account> getAccountCache() {
+        return accountCache;
+    }
+
+    /**
+     * Persists a new account on a database thread.
+     * 
+     * @see #createAccount(Account)
+     */
+    public CompletableFuture<Account> createAccountAsync(Account account) {
+        return databaseExecutor.supply(() -> createAccount(account));
+    }
+
+    /**
+     * Looks up the account on a database thread and checks the password on the
+     * hashing workers, without blocking either pool on the other.
+     * 
+     * @see #login(String, String)
+     */
+    public CompletableFuture<Account> loginAsync(String username, String password) {
+        Account cached = accountCache.getIfPresent(username);
+        CompletableFuture<Account> lookup = cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : databaseExecutor.supply(() -> accountCache.get(username, this::loadAccount));
+        return lookup.thenCompose(account -> account == null
+                        ? CompletableFuture.completedFuture(null)
+                        : passwordHasher.verifyAsync(password, account.getPassword())
+                                .thenApply(verification -> completeLogin(account, password, verification)));
     }
-    
-    
 }
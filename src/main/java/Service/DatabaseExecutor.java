@@ -0,0 +1,111 @@
+package Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import Util.ReadConsistency;
+
+/**
+ * The DatabaseExecutor class runs blocking DAO calls off the request threads. It has a fixed number of threads
+ * and a bounded queue; once the queue is full new work is rejected straight away rather than piling up, and the
+ * controller turns the rejection into a 503 so clients back off.
+ */
+public class DatabaseExecutor {
+    private static volatile DatabaseExecutor shared;
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param threads the number of threads running database work, usually the connection pool size
+     * @param queueLimit how many tasks may wait for a thread before new ones are rejected
+     */
+    public DatabaseExecutor(int threads, int queueLimit) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), r -> {
+                    Thread thread = new Thread(r, "db-executor-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * The executor shared by the services, sized by the db.executor.threads and db.executor.queueLimit system
+     * properties. Threads default to the connection pool's maximum size, since more would only wait for
+     * connections.
+     */
+    public static DatabaseExecutor shared() {
+        if (shared == null) {
+            synchronized (DatabaseExecutor.class) {
+                if (shared == null) {
+                    shared = new DatabaseExecutor(
+                            Integer.getInteger("db.executor.threads", Integer.getInteger("db.pool.maxSize", 10)),
+                            Integer.getInteger("db.executor.queueLimit", 256));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Runs the task on a database thread, with the caller's {@link ReadConsistency} current there. It stays
+     * current for the stages the caller chains onto the returned future, which run on the same thread.
+     *
+     * @return a future completed with the task's result, or failed with {@link RejectedExecutionException}
+     *         if the queue is full
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            ReadConsistency consistency = ReadConsistency.current();
+            return CompletableFuture.supplyAsync(() -> {
+                ReadConsistency.set(consistency);
+                return task.get();
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return the number of threads running database work
+     */
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of threads currently running a task
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of tasks turned away because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting work and lets queued tasks finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,156 @@
+package Service;
+
+import Model.Message;
+import DAO.MessageStore;
+import Util.ReadConsistency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The MessageInsertBatcher class group-commits message inserts. Callers submit a message and wait for it; a
+ * single writer thread collects whatever arrives within a short window (or until the batch is full) and writes
+ * it with one JDBC batch and one commit. Each caller still gets back its own generated message_id.
+ */
+public class MessageInsertBatcher {
+    private final MessageStore messageDAO;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingInsert> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    /**
+     * @param messageDAO the store used to write batches
+     * @param maxBatchSize the most rows written in one transaction
+     * @param maxDelayMillis how long the writer waits for more rows after the first one arrives
+     */
+    public MessageInsertBatcher(MessageStore messageDAO, int maxBatchSize, long maxDelayMillis) {
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writer = new Thread(this::run, "message-insert-batcher");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a message for the next batch.
+     *
+     * @param message the message to persist
+     * @return a future completed with the persisted message, or with null if it could not be inserted
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingInsert pending = new PendingInsert(message);
+        if (!running) {
+            pending.result.complete(messageDAO.insertMessage(message));
+            return pending.result;
+        }
+        queue.add(pending);
+        // the writer may have drained the queue and exited between the check and the add; take the
+        // message back and insert it here, unless the writer already took it
+        if (!running && queue.remove(pending)) {
+            pending.result.complete(messageDAO.insertMessage(message));
+        }
+        return pending.result;
+    }
+
+    /**
+     * Stops the writer thread after it has written everything already queued.
+     */
+    public void shutdown() {
+        running = false;
+        writer.interrupt();
+    }
+
+    /**
+     * @return the number of batches written
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the mean number of rows per batch, 0 if nothing has been written
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) rows.sum() / count;
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingInsert next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutdown() interrupts the writer; flush what was collected and drain the rest
+                queue.drainTo(batch);
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingInsert> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            messages.add(pending.message);
+        }
+        // the rows are written on this thread, so their version is handed to each caller's session here
+        ReadConsistency batchWrites = new ReadConsistency(0);
+        ReadConsistency.set(batchWrites);
+        try {
+            List<Message> inserted = messageDAO.insertMessages(messages);
+            // count before completing, so a caller that has its result also sees the batch counted
+            batches.increment();
+            rows.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                PendingInsert pending = batch.get(i);
+                if (pending.consistency != null) {
+                    pending.consistency.wrote(batchWrites.getLastWrite());
+                }
+                pending.result.complete(inserted.get(i));
+            }
+        } catch (RuntimeException e) {
+            for (PendingInsert pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+        } finally {
+            ReadConsistency.set(null);
+        }
+    }
+
+    private static class PendingInsert {
+        final Message message;
+        final ReadConsistency consistency = ReadConsistency.current();
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The MessageSearchIndex class is an in-process inverted index over message_text. Each term maps to a postings
+ * list of the message_ids containing it, sorted by id, with the term's frequency in each message.
+ *
+ * Text is split into lower-cased runs of letters and digits. A search returns messages containing every query
+ * term, ranked by BM25. Candidates are taken from the rarest term's postings, newest first, and at most
+ * maxCandidates of them are scored. This bounds the latency of very common terms, at the price of ranking only
+ * among their most recent matches.
+ *
+ * Reads share a lock and run concurrently; updates take it exclusively.
+ */
+public class MessageSearchIndex {
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final int maxCandidates;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private long totalLength;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param maxCandidates the most matches of the rarest query term scored per search
+     */
+    public MessageSearchIndex(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Splits text into lower-cased terms made of letters and digits.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Indexes a message, replacing whatever was indexed for its id before.
+     */
+    public void put(int messageId, String text) {
+        List<String> terms = tokenize(text);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked(messageId);
+            String[] distinct = new String[frequencies.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                distinct[i++] = entry.getKey();
+                postings.computeIfAbsent(entry.getKey(), t -> new Postings()).add(messageId, entry.getValue(), terms.size());
+            }
+            documents.put(messageId, new Document(distinct, terms.size()));
+            totalLength += terms.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a message from the index; does nothing if it is not indexed.
+     *
+     * @return true if the message was indexed
+     */
+    public boolean remove(int messageId) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(messageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the message is indexed
+     */
+    public boolean contains(int messageId) {
+        lock.readLock().lock();
+        try {
+            return documents.containsKey(messageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the messages containing every term of the query.
+     *
+     * @param query free text, tokenized like message_text
+     * @param offset the number of ranked results to skip
+     * @param limit the most results returned
+     * @return message_ids, best match first; ties go to the newer message
+     */
+    public int[] search(String query, int offset, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        int wanted = offset + limit;
+        lock.readLock().lock();
+        try {
+            Postings[] lists = new Postings[terms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings.get(terms.get(i));
+                if (lists[i] == null) {
+                    return new int[0];
+                }
+            }
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+            double[] idf = new double[lists.length];
+            int n = documents.size();
+            for (int i = 0; i < lists.length; i++) {
+                idf[i] = Math.log(1 + (n - lists[i].size + 0.5) / (lists[i].size + 0.5));
+            }
+            double averageLength = n == 0 ? 1 : Math.max(1, (double) totalLength / n);
+
+            // min-heap of the best "wanted" results so far
+            PriorityQueue<ScoredId> best = new PriorityQueue<>(wanted);
+            Postings rarest = lists[0];
+            int scanned = 0;
+            candidates:
+            for (int c = rarest.size - 1; c >= 0 && scanned < maxCandidates; c--, scanned++) {
+                int messageId = rarest.ids[c];
+                double norm = K1 * (1 - B + B * rarest.lengths[c] / averageLength);
+                double score = 0;
+                for (int i = 0; i < lists.length; i++) {
+                    int position = i == 0 ? c : lists[i].indexOf(messageId);
+                    if (position < 0) {
+                        continue candidates;
+                    }
+                    int tf = lists[i].frequencies[position];
+                    score += idf[i] * tf * (K1 + 1) / (tf + norm);
+                }
+                // candidates run newest first, so an equal score never displaces a kept result
+                if (best.size() < wanted) {
+                    best.add(new ScoredId(messageId, score));
+                } else if (score > best.peek().score) {
+                    best.poll();
+                    best.add(new ScoredId(messageId, score));
+                }
+            }
+            int count = Math.max(0, best.size() - offset);
+            int[] ranked = new int[count];
+            // the heap yields worst first; fill from the back and drop the first "offset" results
+            for (int i = best.size() - 1; i >= 0; i--) {
+                ScoredId next = best.poll();
+                if (i >= offset) {
+                    ranked[i - offset] = next.messageId;
+                }
+            }
+            return ranked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean removeLocked(int messageId) {
+        Document document = documents.remove(messageId);
+        if (document == null) {
+            return false;
+        }
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            Postings list = postings.get(term);
+            list.remove(messageId);
+            if (list.size == 0) {
+                postings.remove(term);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The message_ids containing one term, sorted, with the term's frequency in each and each message's
+     * length in terms, so scoring never leaves the arrays.
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int[] frequencies = new int[4];
+        int[] lengths = new int[4];
+        int size;
+
+        void add(int messageId, int frequency, int length) {
+            // ids almost always arrive in increasing order, so this is usually an append
+            int position = size == 0 || ids[size - 1] < messageId ? size : -(indexOf(messageId) + 1);
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            System.arraycopy(frequencies, position, frequencies, position + 1, size - position);
+            System.arraycopy(lengths, position, lengths, position + 1, size - position);
+            ids[position] = messageId;
+            frequencies[position] = frequency;
+            lengths[position] = length;
+            size++;
+        }
+
+        void remove(int messageId) {
+            int position = indexOf(messageId);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+                System.arraycopy(frequencies, position + 1, frequencies, position, size - position - 1);
+                System.arraycopy(lengths, position + 1, lengths, position, size - position - 1);
+                size--;
+            }
+        }
+
+        int indexOf(int messageId) {
+            return Arrays.binarySearch(ids, 0, size, messageId);
+        }
+    }
+
+    private static class Document {
+        final String[] terms;
+        final int length;
+
+        Document(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    private static class ScoredId implements Comparable<ScoredId> {
+        final int messageId;
+        final double score;
+
+        ScoredId(int messageId, double score) {
+            this.messageId = messageId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(ScoredId other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Integer.compare(messageId, other.messageId);
+        }
+    }
+}
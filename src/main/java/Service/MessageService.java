@@ -1,33 +1,138 @@
 package Service;
 
 import Model.Message;
+import DAO.FollowDAO;
+import DAO.FollowStore;
 import DAO.MessageDAO;
+import DAO.MessageStore;
+import DAO.RowCallback;
+import Util.ExpiringCache;
+import Util.ReadConsistency;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The MessageService class handles business logic related to messages, 
  * sitting between the controller and persistence layer (DAO).
+ *
+ * Single-message reads go through a bounded, expiring cache (message.cache.size entries,
+ * message.cache.ttlMs milliseconds). Every write through this service invalidates the
+ * cached row after it commits, and a load that overlaps an invalidation is not stored,
+ * so reads never see a stale message. Writes never put their own result in the cache,
+ * since a racing write could commit after it and be overwritten.
+ *
+ * Setting messages.batch.enabled turns on group commit for new messages: concurrent
+ * creates are coalesced into JDBC batches of up to messages.batch.size rows, waiting at
+ * most messages.batch.maxDelayMs for a batch to fill.
+ *
+ * Message text is also kept in a {@link MessageSearchIndex}, built by {@link #warmUp()} and
+ * updated by every write through this service from the row the write returns. Updates and deletes
+ * hold a lock striped by message ID across the write and the index update, so racing writes to one
+ * message reach the index in the order they committed. search.maxCandidates bounds the work per search.
+ *
+ * New messages are fanned out to home timelines by a {@link TimelineService}, sized by
+ * timeline.feedSize and timeline.fanoutLimit and holding at most timeline.maxFeeds feeds.
+ *
+ * The ...Async methods run the same operations on the shared {@link DatabaseExecutor}, so
+ * callers can wait without holding a request thread.
  */
 public class MessageService {
-    private MessageDAO messageDAO;
+    /**
+     * Rows fetched per round trip when streaming, tunable with the messages.fetchSize system property.
+     */
+    private static final int FETCH_SIZE = Integer.getInteger("messages.fetchSize", 500);
+
+    private static final boolean BATCH_INSERTS = Boolean.getBoolean("messages.batch.enabled");
+
+    private MessageStore messageDAO;
+    private MessageInsertBatcher insertBatcher;
+    private TimelineService timelineService;
+    private final DatabaseExecutor databaseExecutor = DatabaseExecutor.shared();
+    private final ExpiringCache<Integer, Message> messageCache = new ExpiringCache<>(
+            Integer.getInteger("message.cache.size", 10_000),
+            Long.getLong("message.cache.ttlMs", 60_000));
+    private final MessageSearchIndex searchIndex = new MessageSearchIndex(
+            Integer.getInteger("search.maxCandidates", 20_000));
+    private final Lock[] indexLocks = newLocks(64);
+    private final Set<Integer> deletedBeforeIndexed = ConcurrentHashMap.newKeySet();
 
     /**
      * No-args constructor for creating a new MessageService with a new MessageDAO.
      */
     public MessageService() {
-        this.messageDAO = new MessageDAO();
+        this(new MessageDAO());
+    }
+
+    /**
+     * Constructor for MessageService when a MessageStore is provided.
+     * Used in testing with a mock MessageStore to test MessageService independently.
+     * 
+     * @param messageDAO the MessageStore to be used by this service
+     */
+    public MessageService(MessageStore messageDAO) {
+        this(messageDAO, new FollowDAO());
+    }
+
+    /**
+     * Constructor for MessageService with the stores of a {@link DAO.StorageEngine}.
+     * 
+     * @param messageDAO the MessageStore to be used by this service
+     * @param followDAO the FollowStore home timelines are built from
+     */
+    public MessageService(MessageStore messageDAO, FollowStore followDAO) {
+        this(messageDAO, followDAO, BATCH_INSERTS ? new MessageInsertBatcher(messageDAO,
+                Integer.getInteger("messages.batch.size", 64),
+                Long.getLong("messages.batch.maxDelayMs", 2)) : null);
+    }
+
+    /**
+     * Constructor for MessageService with an explicit insert batcher.
+     * 
+     * @param messageDAO the MessageStore to be used by this service
+     * @param insertBatcher the batcher used to group-commit new messages, or null to insert them one at a time
+     */
+    public MessageService(MessageStore messageDAO, MessageInsertBatcher insertBatcher) {
+        this(messageDAO, new FollowDAO(), insertBatcher);
     }
 
     /**
-     * Constructor for MessageService when a MessageDAO is provided.
-     * Used in testing with a mock MessageDAO to test MessageService independently.
+     * Constructor for MessageService with explicit stores and insert batcher.
      * 
-     * @param messageDAO the MessageDAO to be used by this service
+     * @param messageDAO the MessageStore to be used by this service
+     * @param followDAO the FollowStore home timelines are built from
+     * @param insertBatcher the batcher used to group-commit new messages, or null to insert them one at a time
      */
-    public MessageService(MessageDAO messageDAO) {
+    public MessageService(MessageStore messageDAO, FollowStore followDAO, MessageInsertBatcher insertBatcher) {
         this.messageDAO = messageDAO;
+        this.insertBatcher = insertBatcher;
+        this.timelineService = new TimelineService(followDAO, messageDAO,
+                Integer.getInteger("timeline.feedSize", 800),
+                Integer.getInteger("timeline.fanoutLimit", 10_000),
+                Integer.getInteger("timeline.maxFeeds", 10_000));
+    }
+
+    /**
+     * Builds the search index from the message table and loads the follow graph. Called once at startup.
+     */
+    public void warmUp() {
+        timelineService.warmUp();
+        try {
+            messageDAO.streamAllMessages(FETCH_SIZE,
+                    message -> searchIndex.put(message.getMessage_id(), message.getMessage_text()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -39,6 +144,28 @@ public class MessageService {
         return messageDAO.getAllMessages();
     }
 
+    /**
+     * Streams all messages to the callback one at a time instead of building a list.
+     * 
+     * @param callback receives each message in message_id order
+     * @throws IOException if the callback fails to write a message
+     */
+    public void streamAllMessages(RowCallback<Message> callback) throws IOException {
+        messageDAO.streamAllMessages(FETCH_SIZE, callback);
+    }
+
+    /**
+     * Retrieves the messages following a message_id, so the whole table can be read a chunk at a time.
+     * 
+     * @param afterMessageId the last message_id of the previous chunk, 0 for the first
+     * @param limit the maximum number of messages in the chunk
+     * @return the chunk, in message_id order
+     * @throws IOException if the messages cannot be read
+     */
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) throws IOException {
+        return messageDAO.getMessagesAfter(afterMessageId, limit);
+    }
+
     /**
      * Persists a new message.
      * 
@@ -46,7 +173,11 @@ public class MessageService {
      * @return the persisted Message if successful, otherwise null
      */
     public Message createMessage(Message message) {
-        return messageDAO.insertMessage(message);
+        Message created = insertBatcher != null
+                ? insertBatcher.submit(message).join()
+                : messageDAO.insertMessage(message);
+        onCreated(created);
+        return created;
     }
 
     /**
@@ -56,7 +187,9 @@ public class MessageService {
      * @return an Optional containing the Message if found, otherwise an empty Optional
      */
     public Optional<Message> getMessageById(int messageId) {
-        return messageDAO.getMessageById(messageId);
+        // the cache is shared by every session, so it is filled only from a reader with every write so far
+        return Optional.ofNullable(messageCache.get(messageId,
+                id -> ReadConsistency.latest(() -> messageDAO.getMessageById(id)).orElse(null)));
     }
 
     /**
@@ -67,7 +200,41 @@ public class MessageService {
      * @return the updated Message if successful, otherwise null
      */
     public Message updateMessageText(int messageId, String newText) {
-        return messageDAO.updateMessageText(messageId, newText);
+        Lock lock = indexLock(messageId);
+        lock.lock();
+        try {
+            Message updated = messageDAO.updateMessageText(messageId, newText);
+            messageCache.invalidate(messageId);
+            if (updated != null) {
+                searchIndex.put(messageId, updated.getMessage_text());
+            }
+            return updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the text of a message posted by the given account.
+     * 
+     * @param messageId the ID of the message
+     * @param postedBy the account that must own the message
+     * @param newText the new text for the message
+     * @return the updated Message, or null if no message with that ID belongs to the account
+     */
+    public Message updateMessageText(int messageId, int postedBy, String newText) {
+        Lock lock = indexLock(messageId);
+        lock.lock();
+        try {
+            Message updated = messageDAO.updateMessageText(messageId, postedBy, newText);
+            if (updated != null) {
+                messageCache.invalidate(messageId);
+                searchIndex.put(messageId, updated.getMessage_text());
+            }
+            return updated;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -77,7 +244,62 @@ public class MessageService {
      * @return true if the message was deleted, false otherwise
      */
     public boolean deleteMessage(int messageId) {
-        return messageDAO.deleteMessage(messageId);
+        Lock lock = indexLock(messageId);
+        lock.lock();
+        try {
+            boolean deleted = messageDAO.deleteMessage(messageId);
+            messageCache.invalidate(messageId);
+            if (deleted) {
+                unindex(messageId);
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes a message and returns it, in a single database round trip.
+     * 
+     * @param messageId the ID of the message
+     * @return an Optional containing the deleted Message, or an empty Optional if it did not exist
+     */
+    public Optional<Message> deleteAndReturnMessage(int messageId) {
+        Lock lock = indexLock(messageId);
+        lock.lock();
+        try {
+            Optional<Message> deleted = messageDAO.deleteAndReturnMessage(messageId);
+            messageCache.invalidate(messageId);
+            if (deleted.isPresent()) {
+                unindex(messageId);
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes a message posted by the given account and returns it, in a single database round trip.
+     * 
+     * @param messageId the ID of the message
+     * @param postedBy the account that must own the message
+     * @return an Optional containing the deleted Message, or an empty Optional if no message with
+     *         that ID belongs to the account
+     */
+    public Optional<Message> deleteAndReturnMessage(int messageId, int postedBy) {
+        Lock lock = indexLock(messageId);
+        lock.lock();
+        try {
+            Optional<Message> deleted = messageDAO.deleteAndReturnMessage(messageId, postedBy);
+            if (deleted.isPresent()) {
+                messageCache.invalidate(messageId);
+                unindex(messageId);
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -89,4 +311,263 @@ public class MessageService {
     public List<Message> getMessagesByUserId(int accountId) {
         return messageDAO.getMessagesByUserId(accountId);
     }
+
+    /**
+     * Retrieves one page of messages for a specific user.
+     * 
+     * @param accountId the ID of the account
+     * @param afterMessageId the message_id the page starts after, 0 for the first page
+     * @param limit the maximum number of messages on the page
+     * @return the messages on the page, in message_id order
+     */
+    public List<Message> getMessagesByUserId(int accountId, int afterMessageId, int limit) {
+        return messageDAO.getMessagesByUserId(accountId, afterMessageId, limit);
+    }
+
+    /**
+     * Retrieves one page of the messages posted in a time range.
+     * 
+     * @param since the earliest time_posted_epoch, inclusive
+     * @param until the latest time_posted_epoch, exclusive
+     * @param afterTime the time_posted_epoch of the last message of the previous page, since for the first page
+     * @param afterMessageId the message_id of the last message of the previous page, 0 for the first page
+     * @param limit the maximum number of messages on the page
+     * @return the messages on the page, oldest first
+     */
+    public List<Message> getMessagesByTimeRange(long since, long until, long afterTime, int afterMessageId, int limit) {
+        return messageDAO.getMessagesByTimeRange(since, until, afterTime, afterMessageId, limit);
+    }
+
+    /**
+     * Indexes a new message and fans it out to timelines. An update or delete of it may already have
+     * committed, and been indexed, between the insert and this call; the index then keeps what that write
+     * left.
+     */
+    private void onCreated(Message created) {
+        if (created == null) {
+            return;
+        }
+        int messageId = created.getMessage_id();
+        Lock lock = indexLock(messageId);
+        lock.lock();
+        try {
+            if (!deletedBeforeIndexed.remove(messageId) && !searchIndex.contains(messageId)) {
+                searchIndex.put(messageId, created.getMessage_text());
+            }
+        } finally {
+            lock.unlock();
+        }
+        timelineService.onMessageCreated(created);
+    }
+
+    /**
+     * Removes a deleted message from the index. Found not indexed, it is a new message whose creator has
+     * not indexed it yet, and is remembered so that it never is.
+     */
+    private void unindex(int messageId) {
+        if (!searchIndex.remove(messageId)) {
+            deletedBeforeIndexed.add(messageId);
+        }
+    }
+
+    /**
+     * Writes to a message hold its lock from the database write until the index reflects it, so the index
+     * is updated in commit order without reading the row back.
+     */
+    private Lock indexLock(int messageId) {
+        return indexLocks[messageId & (indexLocks.length - 1)];
+    }
+
+    private static Lock[] newLocks(int count) {
+        Lock[] locks = new Lock[count];
+        for (int i = 0; i < count; i++) {
+            // not synchronized: the lock is held over JDBC calls, which would pin a virtual thread
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    /**
+     * Searches message_text for messages containing every term of the query.
+     * 
+     * @param query free text
+     * @param offset the number of ranked results to skip
+     * @param limit the most messages returned
+     * @return the matching messages, best match first
+     */
+    public List<Message> searchMessages(String query, int offset, int limit) {
+        return getMessagesByIds(searchIndex.search(query, offset, limit));
+    }
+
+    /**
+     * Retrieves an account's home timeline: its own messages and those of the accounts it follows.
+     * 
+     * @param accountId the ID of the account
+     * @param limit the most messages returned
+     * @return the messages, newest first
+     */
+    public List<Message> getTimeline(int accountId, int limit) {
+        return getMessagesByIds(timelineService.getTimeline(accountId, limit));
+    }
+
+    /**
+     * Resolves message IDs to messages, serving what the message cache holds and fetching the
+     * rest in one round trip.
+     * 
+     * @param ids the IDs of the messages
+     * @return the messages in the order of the IDs; IDs of deleted messages are skipped
+     */
+    public List<Message> getMessagesByIds(int[] ids) {
+        List<Integer> keys = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            keys.add(id);
+        }
+        Map<Integer, Message> found = messageCache.getAll(keys, missing -> {
+            Map<Integer, Message> loaded = new HashMap<>();
+            Integer[] missingIds = missing.toArray(new Integer[0]);
+            for (Message message : ReadConsistency.latest(() -> messageDAO.getMessagesByIds(missingIds))) {
+                loaded.put(message.getMessage_id(), message);
+            }
+            return loaded;
+        });
+        List<Message> results = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Message message = found.get(id);
+            // skipped if it was deleted after its ID was read
+            if (message != null) {
+                results.add(message);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the service holding the follow graph and home timeline feeds
+     */
+    public TimelineService getTimelineService() {
+        return timelineService;
+    }
+
+    /**
+     * @return the search index over message_text
+     */
+    public MessageSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return the single-message cache, for reading its hit ratio, eviction and load-latency metrics
+     */
+    public ExpiringCache<Integer, Message> getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * Reads one chunk on a database thread, which returns its connection before the future completes.
+     * 
+     * @see #getMessagesAfter(int, int)
+     */
+    public CompletableFuture<List<Message>> getMessagesAfterAsync(int afterMessageId, int limit) {
+        return databaseExecutor.supply(() -> {
+            try {
+                return getMessagesAfter(afterMessageId, limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * @see #getAllMessages()
+     */
+    public CompletableFuture<List<Message>> getAllMessagesAsync() {
+        return databaseExecutor.supply(this::getAllMessages);
+    }
+
+    /**
+     * With group commit the batcher's own future is returned, so no database thread waits for the batch
+     * to flush; the indexing and fan-out run on the batcher's thread once it has.
+     * 
+     * @see #createMessage(Message)
+     */
+    public CompletableFuture<Message> createMessageAsync(Message message) {
+        if (insertBatcher != null) {
+            return insertBatcher.submit(message).thenApply(created -> {
+                onCreated(created);
+                return created;
+            });
+        }
+        return databaseExecutor.supply(() -> createMessage(message));
+    }
+
+    /**
+     * @see #getMessageById(int)
+     */
+    public CompletableFuture<Optional<Message>> getMessageByIdAsync(int messageId) {
+        return databaseExecutor.supply(() -> getMessageById(messageId));
+    }
+
+    /**
+     * @see #updateMessageText(int, String)
+     */
+    public CompletableFuture<Message> updateMessageTextAsync(int messageId, String newText) {
+        return databaseExecutor.supply(() -> updateMessageText(messageId, newText));
+    }
+
+    /**
+     * @see #updateMessageText(int, int, String)
+     */
+    public CompletableFuture<Message> updateMessageTextAsync(int messageId, int postedBy, String newText) {
+        return databaseExecutor.supply(() -> updateMessageText(messageId, postedBy, newText));
+    }
+
+    /**
+     * @see #deleteAndReturnMessage(int)
+     */
+    public CompletableFuture<Optional<Message>> deleteAndReturnMessageAsync(int messageId) {
+        return databaseExecutor.supply(() -> deleteAndReturnMessage(messageId));
+    }
+
+    /**
+     * @see #deleteAndReturnMessage(int, int)
+     */
+    public CompletableFuture<Optional<Message>> deleteAndReturnMessageAsync(int messageId, int postedBy) {
+        return databaseExecutor.supply(() -> deleteAndReturnMessage(messageId, postedBy));
+    }
+
+    /**
+     * @see #searchMessages(String, int, int)
+     */
+    public CompletableFuture<List<Message>> searchMessagesAsync(String query, int offset, int limit) {
+        return databaseExecutor.supply(() -> searchMessages(query, offset, limit));
+    }
+
+    /**
+     * @see #getTimeline(int, int)
+     */
+    public CompletableFuture<List<Message>> getTimelineAsync(int accountId, int limit) {
+        return databaseExecutor.supply(() -> getTimeline(accountId, limit));
+    }
+
+    /**
+     * @see #getMessagesByUserId(int)
+     */
+    public CompletableFuture<List<Message>> getMessagesByUserIdAsync(int accountId) {
+        return databaseExecutor.supply(() -> getMessagesByUserId(accountId));
+    }
+
+    /**
+     * @see #getMessagesByUserId(int, int, int)
+     */
+    public CompletableFuture<List<Message>> getMessagesByUserIdAsync(int accountId, int afterMessageId, int limit) {
+        return databaseExecutor.supply(() -> getMessagesByUserId(accountId, afterMessageId, limit));
+    }
+
+    /**
+     * @see #getMessagesByTimeRange(long, long, long, int, int)
+     */
+    public CompletableFuture<List<Message>> getMessagesByTimeRangeAsync(long since, long until, long afterTime,
+            int afterMessageId, int limit) {
+        return databaseExecutor.supply(() -> getMessagesByTimeRange(since, until, afterTime, afterMessageId, limit));
+    }
 }
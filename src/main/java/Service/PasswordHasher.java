@@ -0,0 +1,268 @@
+package Service;
+
+import Util.ExpiringCache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The PasswordHasher class turns passwords into salted PBKDF2 hashes and checks passwords against them.
+ *
+ * Hashes are stored as "$pbkdf2$ALGORITHM$ITERATIONS$SALT$HASH" so the algorithm and work factor can change
+ * without invalidating existing rows; {@link Verification#needsRehash()} tells the caller when a stored value
+ * should be replaced. Values without the prefix are treated as legacy plaintext passwords.
+ *
+ * Hashing is deliberately CPU-heavy, so it runs on a bounded worker pool, and a short-lived cache remembers
+ * recent successful verifications so repeated logins do not each pay the full cost.
+ */
+public class PasswordHasher {
+    private static final String PREFIX = "$pbkdf2$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static volatile PasswordHasher shared;
+
+    private final String algorithm;
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadPoolExecutor workers;
+    private final ExpiringCache<String, byte[]> verifiedCache;
+    private final SecretKeySpec cacheKey;
+
+    /**
+     * @param algorithm the JCA name of the PBKDF2 variant, e.g. PBKDF2WithHmacSHA512
+     * @param iterations the PBKDF2 work factor for new hashes
+     * @param threads the number of threads hashing at once
+     * @param queueLimit how many hash requests may wait before new ones are rejected
+     * @param cacheSize the number of recent verifications remembered, 0 to disable the cache
+     * @param cacheTtlMillis how long a remembered verification stays valid
+     */
+    public PasswordHasher(String algorithm, int iterations, int threads, int queueLimit,
+                          int cacheSize, long cacheTtlMillis) {
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueLimit), r -> {
+                    Thread thread = new Thread(r, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.verifiedCache = cacheSize > 0 ? new ExpiringCache<>(cacheSize, cacheTtlMillis) : null;
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, "HmacSHA256");
+    }
+
+    /**
+     * The hasher shared by the services, configured with the auth.hash.algorithm, auth.hash.iterations,
+     * auth.hash.threads, auth.hash.queueLimit, auth.verifyCache.size and auth.verifyCache.ttlMs system
+     * properties.
+     */
+    public static PasswordHasher shared() {
+        if (shared == null) {
+            synchronized (PasswordHasher.class) {
+                if (shared == null) {
+                    shared = new PasswordHasher(
+                            System.getProperty("auth.hash.algorithm", "PBKDF2WithHmacSHA512"),
+                            Integer.getInteger("auth.hash.iterations", 210_000),
+                            Integer.getInteger("auth.hash.threads", Runtime.getRuntime().availableProcessors()),
+                            Integer.getInteger("auth.hash.queueLimit", 256),
+                            Integer.getInteger("auth.verifyCache.size", 10_000),
+                            Long.getLong("auth.verifyCache.ttlMs", 60_000));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Hashes a password with a fresh salt on the worker pool, waiting for the result.
+     *
+     * @return the encoded hash to store
+     * @throws RejectedExecutionException if the worker pool is saturated
+     */
+    public String hash(String password) {
+        return await(hashAsync(password));
+    }
+
+    /**
+     * @see #hash(String)
+     */
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> encode(password));
+    }
+
+    /**
+     * Checks a password against a stored value on the worker pool, waiting for the result.
+     *
+     * @param password the password supplied by the user
+     * @param stored the stored hash, or a legacy plaintext password
+     * @throws RejectedExecutionException if the worker pool is saturated
+     */
+    public Verification verify(String password, String stored) {
+        return await(verifyAsync(password, stored));
+    }
+
+    /**
+     * @see #verify(String, String)
+     */
+    public CompletableFuture<Verification> verifyAsync(String password, String stored) {
+        if (password == null || stored == null) {
+            return CompletableFuture.completedFuture(Verification.FAILED);
+        }
+        if (verifiedCache != null) {
+            byte[] remembered = verifiedCache.getIfPresent(stored);
+            if (remembered != null && MessageDigest.isEqual(remembered, fingerprint(password))) {
+                return CompletableFuture.completedFuture(Verification.VALID);
+            }
+        }
+        return submit(() -> check(password, stored));
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the cache of recent successful verifications, or null if it is disabled
+     */
+    public ExpiringCache<String, byte[]> getVerifiedCache() {
+        return verifiedCache;
+    }
+
+    /**
+     * Stops the worker threads.
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, workers);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String encode(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        byte[] hash = pbkdf2(algorithm, iterations, password, salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + algorithm + "$" + iterations + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(hash);
+    }
+
+    private Verification check(String password, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            boolean matches = MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+            return matches ? Verification.VALID_NEEDS_REHASH : Verification.FAILED;
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 4) {
+            return Verification.FAILED;
+        }
+        String storedAlgorithm = parts[0];
+        int storedIterations;
+        byte[] expected;
+        byte[] actual;
+        try {
+            storedIterations = Integer.parseInt(parts[1]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            expected = decoder.decode(parts[3]);
+            actual = pbkdf2(storedAlgorithm, storedIterations, password, decoder.decode(parts[2]));
+        } catch (IllegalArgumentException e) {
+            // a malformed stored value never matches
+            return Verification.FAILED;
+        }
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return Verification.FAILED;
+        }
+        if (!storedAlgorithm.equals(algorithm) || storedIterations != iterations) {
+            return Verification.VALID_NEEDS_REHASH;
+        }
+        if (verifiedCache != null) {
+            verifiedCache.put(stored, fingerprint(password));
+        }
+        return Verification.VALID;
+    }
+
+    private static byte[] pbkdf2(String algorithm, int iterations, String password, byte[] salt) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Password hashing with " + algorithm + " is unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * A keyed digest of the password for the verification cache. The key is random per process, so the cache
+     * never holds anything an attacker could check guesses against offline.
+     */
+    private byte[] fingerprint(String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(cacheKey);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is unavailable", e);
+        }
+    }
+
+    /**
+     * The outcome of checking a password.
+     */
+    public enum Verification {
+        /** The password matches and the stored value is current. */
+        VALID,
+        /** The password matches, but the stored value is plaintext or uses an old algorithm or work factor. */
+        VALID_NEEDS_REHASH,
+        /** The password does not match. */
+        FAILED;
+
+        public boolean isValid() {
+            return this != FAILED;
+        }
+
+        public boolean needsRehash() {
+            return this == VALID_NEEDS_REHASH;
+        }
+    }
+}
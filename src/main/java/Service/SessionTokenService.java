@@ -0,0 +1,125 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.OptionalInt;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The SessionTokenService class issues and checks the stateless session tokens handed out by /login.
+ *
+ * A token is "PAYLOAD.SIGNATURE", where the payload is the base64url of "accountId:expiryMillis" and the
+ * signature is an HMAC-SHA256 of the payload. Checking one needs only the key and the clock, never the database.
+ * Tokens cannot be revoked individually; they stop working when they expire or when the key changes.
+ */
+public class SessionTokenService {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static volatile SessionTokenService shared;
+
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+    // Mac instances are not thread-safe, and creating one costs more than the HMAC itself.
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * @param secret the HMAC key
+     * @param ttlMillis how long an issued token stays valid
+     */
+    public SessionTokenService(byte[] secret, long ttlMillis) {
+        this.key = new SecretKeySpec(secret, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * The service shared by the controller. The key is read from the auth.token.secret system property
+     * (base64); without it a random key is generated, so tokens do not survive a restart. Tokens last
+     * auth.token.ttlMs milliseconds, an hour by default.
+     */
+    public static SessionTokenService shared() {
+        if (shared == null) {
+            synchronized (SessionTokenService.class) {
+                if (shared == null) {
+                    String configured = System.getProperty("auth.token.secret");
+                    byte[] secret;
+                    if (configured != null) {
+                        secret = Base64.getDecoder().decode(configured);
+                    } else {
+                        secret = new byte[32];
+                        new SecureRandom().nextBytes(secret);
+                    }
+                    shared = new SessionTokenService(secret, Long.getLong("auth.token.ttlMs", 3_600_000));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @param accountId the account the token speaks for
+     * @return a signed token valid for the configured time
+     */
+    public String issue(int accountId) {
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (accountId + ":" + (System.currentTimeMillis() + ttlMillis)).getBytes(StandardCharsets.UTF_8));
+        return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload));
+    }
+
+    /**
+     * @param token a token from {@link #issue(int)}, may be null
+     * @return the account the token speaks for, or empty if it is missing, malformed, forged or expired
+     */
+    public OptionalInt verify(String token) {
+        if (token == null) {
+            return OptionalInt.empty();
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return OptionalInt.empty();
+        }
+        String payload = token.substring(0, dot);
+        try {
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return OptionalInt.empty();
+            }
+            String claims = new String(Base64.getUrlDecoder().decode(payload), StandardCharsets.UTF_8);
+            int colon = claims.indexOf(':');
+            if (colon <= 0) {
+                return OptionalInt.empty();
+            }
+            long expiry = Long.parseLong(claims.substring(colon + 1));
+            if (System.currentTimeMillis() >= expiry) {
+                return OptionalInt.empty();
+            }
+            return OptionalInt.of(Integer.parseInt(claims.substring(0, colon)));
+        } catch (IllegalArgumentException e) {
+            // bad base64 or numbers; NumberFormatException is an IllegalArgumentException
+            return OptionalInt.empty();
+        }
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is unavailable", e);
+        }
+    }
+}
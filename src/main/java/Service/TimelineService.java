@@ -0,0 +1,351 @@
+package Service;
+
+import Model.Follow;
+import Model.Message;
+import DAO.FollowStore;
+import DAO.MessageStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TimelineService class keeps the follow graph in memory and serves home timelines: an account's own
+ * messages and those of everyone it follows, newest first.
+ *
+ * Timelines are precomputed. Each account that has read its timeline gets a feed of its newest messages
+ * (timeline.feedSize of them), and every new message is added to the feeds of its author's followers
+ * (fan-out on write). "Newest" means the latest time_posted_epoch, then the highest message_id; IDs alone do
+ * not follow time, since the sharded engine draws them from one sequence per shard. A feed is built from the database the first time it is read, and rebuilt
+ * after its owner follows or unfollows someone. At most timeline.maxFeeds feeds are kept; past that the least
+ * recently used one is dropped and rebuilt if its owner reads it again.
+ *
+ * Authors with more than timeline.fanoutLimit followers are not fanned out, since one message would touch too
+ * many feeds. Their recent messages are pulled from the database when a follower reads a timeline instead, so
+ * only timelines that follow such an account cost a query in the steady state.
+ */
+public class TimelineService {
+    private static final Logger LOG = LoggerFactory.getLogger(TimelineService.class);
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator.<Entry>comparingLong(entry -> entry.timePosted)
+            .thenComparingInt(entry -> entry.messageId).reversed();
+
+    private final FollowStore followDAO;
+    private final MessageStore messageDAO;
+    private final int feedSize;
+    private final int fanoutLimit;
+    private final int maxFeeds;
+    private final DatabaseExecutor databaseExecutor = DatabaseExecutor.shared();
+
+    private final ConcurrentHashMap<Integer, Set<Integer>> followers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Set<Integer>> following = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Integer, Feed> feeds;
+
+    private final LongAdder fanoutWrites = new LongAdder();
+    private final LongAdder feedLoads = new LongAdder();
+    private final LongAdder pulls = new LongAdder();
+    private final LongAdder feedEvictions = new LongAdder();
+
+    /**
+     * @param followDAO the store the follow graph is read from and written to
+     * @param messageDAO the store feeds are built from and large authors are pulled from
+     * @param feedSize the number of message_ids kept per feed
+     * @param fanoutLimit the most followers an author can have and still be fanned out on write
+     * @param maxFeeds the most feeds kept in memory at once
+     */
+    public TimelineService(FollowStore followDAO, MessageStore messageDAO, int feedSize, int fanoutLimit,
+            int maxFeeds) {
+        this.followDAO = followDAO;
+        this.messageDAO = messageDAO;
+        this.feedSize = feedSize;
+        this.fanoutLimit = fanoutLimit;
+        this.maxFeeds = maxFeeds;
+        this.feeds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Feed> eldest) {
+                if (size() > TimelineService.this.maxFeeds) {
+                    feedEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Loads the follow graph. Called once at startup.
+     */
+    public void warmUp() {
+        List<Follow> follows = followDAO.getAllFollows();
+        for (Follow follow : follows) {
+            link(follow.getFollower_id(), follow.getFollowee_id());
+        }
+        LOG.info("op=warmUp follows={}", follows.size());
+    }
+
+    /**
+     * Makes one account follow another.
+     *
+     * @return true if the relationship is recorded, false if either account does not exist
+     */
+    public boolean follow(int followerId, int followeeId) {
+        if (!followDAO.follow(followerId, followeeId)) {
+            return false;
+        }
+        link(followerId, followeeId);
+        // the followee's older messages are missing from the feed; rebuild it on the next read
+        removeFeed(followerId);
+        return true;
+    }
+
+    /**
+     * Stops one account following another.
+     *
+     * @return true if a relationship was removed, false if there was none
+     */
+    public boolean unfollow(int followerId, int followeeId) {
+        boolean removed = followDAO.unfollow(followerId, followeeId);
+        Set<Integer> followees = following.get(followerId);
+        if (followees != null) {
+            followees.remove(followeeId);
+        }
+        Set<Integer> followersOfFollowee = followers.get(followeeId);
+        if (followersOfFollowee != null) {
+            followersOfFollowee.remove(followerId);
+        }
+        removeFeed(followerId);
+        return removed;
+    }
+
+    /**
+     * @see #follow(int, int)
+     */
+    public CompletableFuture<Boolean> followAsync(int followerId, int followeeId) {
+        return databaseExecutor.supply(() -> follow(followerId, followeeId));
+    }
+
+    /**
+     * @see #unfollow(int, int)
+     */
+    public CompletableFuture<Boolean> unfollowAsync(int followerId, int followeeId) {
+        return databaseExecutor.supply(() -> unfollow(followerId, followeeId));
+    }
+
+    /**
+     * @return the IDs of the accounts an account follows, ascending
+     */
+    public List<Integer> getFollowing(int accountId) {
+        return sorted(following.get(accountId));
+    }
+
+    /**
+     * @return the IDs of the accounts following an account, ascending
+     */
+    public List<Integer> getFollowers(int accountId) {
+        return sorted(followers.get(accountId));
+    }
+
+    /**
+     * Fans a new message out to its author's feed and its followers' feeds. Only feeds that have been read
+     * are kept up to date; the rest are built when first read.
+     */
+    public void onMessageCreated(Message message) {
+        Entry entry = new Entry(message);
+        appendIfPresent(message.getPosted_by(), entry);
+        Set<Integer> audience = followers.get(message.getPosted_by());
+        if (audience == null || audience.size() > fanoutLimit) {
+            return;
+        }
+        for (int followerId : audience) {
+            appendIfPresent(followerId, entry);
+        }
+    }
+
+    /**
+     * Creates the account's feed if it has none, so the caller must have checked that the account exists.
+     *
+     * @param accountId the account whose timeline is read
+     * @param limit the most message_ids returned, at most the feed size
+     * @return message_ids from the account and everyone it follows, newest first
+     */
+    public int[] getTimeline(int accountId, int limit) {
+        Feed feed;
+        synchronized (feeds) {
+            feed = feeds.computeIfAbsent(accountId, id -> new Feed(feedSize));
+        }
+        if (!feed.isLoaded()) {
+            feedLoads.increment();
+            feed.load(loadFeed(accountId));
+        }
+        List<Entry> entries = feed.snapshot();
+        List<Integer> pulledAuthors = new ArrayList<>();
+        Set<Integer> followees = following.get(accountId);
+        if (followees != null) {
+            for (int followeeId : followees) {
+                if (!isFannedOut(followeeId)) {
+                    pulledAuthors.add(followeeId);
+                }
+            }
+        }
+        if (!pulledAuthors.isEmpty()) {
+            pulls.increment();
+            TreeSet<Entry> merged = new TreeSet<>(NEWEST_FIRST);
+            merged.addAll(entries);
+            for (Message message : messageDAO.getRecentMessagesByPosters(pulledAuthors.toArray(new Integer[0]), limit)) {
+                merged.add(new Entry(message));
+            }
+            entries = new ArrayList<>(merged);
+        }
+        int[] ids = new int[Math.min(limit, entries.size())];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = entries.get(i).messageId;
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of message_ids appended to feeds by fan-out
+     */
+    public long getFanoutWriteCount() {
+        return fanoutWrites.sum();
+    }
+
+    /**
+     * @return the number of feeds built from the database
+     */
+    public long getFeedLoadCount() {
+        return feedLoads.sum();
+    }
+
+    /**
+     * @return the number of timeline reads that pulled messages of large authors from the database
+     */
+    public long getPullCount() {
+        return pulls.sum();
+    }
+
+    /**
+     * @return the number of feeds dropped because timeline.maxFeeds were already kept
+     */
+    public long getFeedEvictionCount() {
+        return feedEvictions.sum();
+    }
+
+    private void link(int followerId, int followeeId) {
+        following.computeIfAbsent(followerId, id -> ConcurrentHashMap.newKeySet()).add(followeeId);
+        followers.computeIfAbsent(followeeId, id -> ConcurrentHashMap.newKeySet()).add(followerId);
+    }
+
+    private boolean isFannedOut(int authorId) {
+        Set<Integer> audience = followers.get(authorId);
+        return audience == null || audience.size() <= fanoutLimit;
+    }
+
+    private void appendIfPresent(int accountId, Entry entry) {
+        Feed feed;
+        synchronized (feeds) {
+            feed = feeds.get(accountId);
+        }
+        if (feed != null) {
+            feed.add(entry);
+            fanoutWrites.increment();
+        }
+    }
+
+    private void removeFeed(int accountId) {
+        synchronized (feeds) {
+            feeds.remove(accountId);
+        }
+    }
+
+    /**
+     * The newest messages of the account itself and of the fanned-out accounts it follows.
+     */
+    private List<Message> loadFeed(int accountId) {
+        List<Integer> authors = new ArrayList<>();
+        authors.add(accountId);
+        Set<Integer> followees = following.get(accountId);
+        if (followees != null) {
+            for (int followeeId : followees) {
+                if (isFannedOut(followeeId)) {
+                    authors.add(followeeId);
+                }
+            }
+        }
+        return messageDAO.getRecentMessagesByPosters(authors.toArray(new Integer[0]), feedSize);
+    }
+
+    private static List<Integer> sorted(Set<Integer> ids) {
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<Integer> list = new ArrayList<>(ids);
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * The position of a message in a timeline.
+     */
+    private static final class Entry {
+        final long timePosted;
+        final int messageId;
+
+        Entry(Message message) {
+            this.timePosted = message.getTime_posted_epoch();
+            this.messageId = message.getMessage_id();
+        }
+    }
+
+    /**
+     * A feed's newest messages, at most its capacity of them. Fan-out can add to it while it is being loaded;
+     * a message added twice is kept once.
+     */
+    private static class Feed {
+        private final int capacity;
+        private final TreeSet<Entry> entries = new TreeSet<>(NEWEST_FIRST);
+        private volatile boolean loaded;
+
+        Feed(int capacity) {
+            this.capacity = capacity;
+        }
+
+        boolean isLoaded() {
+            return loaded;
+        }
+
+        synchronized void add(Entry entry) {
+            entries.add(entry);
+            if (entries.size() > capacity) {
+                entries.pollLast();
+            }
+        }
+
+        synchronized void load(List<Message> newestFirst) {
+            if (loaded) {
+                return;
+            }
+            for (Message message : newestFirst) {
+                add(new Entry(message));
+            }
+            loaded = true;
+        }
+
+        /**
+         * @return the entries, newest first
+         */
+        synchronized List<Entry> snapshot() {
+            return new ArrayList<>(entries);
+        }
+    }
+}
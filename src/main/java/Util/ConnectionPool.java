@@ -0,0 +1,453 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ConnectionPool class keeps a bounded set of physical connections open and lends them out to the DAOs.
+ * Connections handed out are proxies: calling close() on them returns the physical connection to the pool
+ * instead of closing it.
+ *
+ * The pool validates connections on borrow, evicts connections that have been idle for too long (never going
+ * below the configured minimum), and, with a leak detection threshold above 0, logs the stack trace of the
+ * borrower when a connection is held longer than it. The stack trace is captured on every borrow, so leak
+ * detection is for finding leaks rather than for normal running.
+ *
+ * Each physical connection keeps a {@link StatementCache}. prepareStatement(sql) on a borrowed connection hands
+ * out a cached statement when one exists, and closing that statement puts it back for the next borrower.
+ */
+public class ConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Map<Lease, Long> borrowed = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final ScheduledExecutorService housekeeper;
+
+    /**
+     * @param dataSource the source of physical connections
+     * @param minSize the number of connections kept open even when idle
+     * @param maxSize the maximum number of connections open at once
+     * @param acquireTimeoutMillis how long a borrower waits for a free connection before failing
+     * @param idleTimeoutMillis how long a connection above minSize may sit idle before it is closed
+     * @param leakThresholdMillis how long a connection may be held before it is reported as a possible leak,
+     *        or 0 to not detect leaks
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+                          long idleTimeoutMillis, long leakThresholdMillis) {
+        this(dataSource, minSize, maxSize, acquireTimeoutMillis, idleTimeoutMillis, leakThresholdMillis, 32);
+    }
+
+    /**
+     * @param statementCacheSize the number of prepared statements cached per connection, 0 to disable caching
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+                          long idleTimeoutMillis, long leakThresholdMillis, int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100,
+                (leakThresholdMillis > 0 ? Math.min(idleTimeoutMillis, leakThresholdMillis) : idleTimeoutMillis) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+
+        try {
+            for (int i = 0; i < minSize; i++) {
+                idle.offerLast(open());
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could not open the minimum number of connections", e);
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquire timeout for one to become free.
+     *
+     * @return a pooled connection; close it to return it to the pool
+     * @throws SQLException if no connection could be obtained in time or the database is unreachable
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLException("Timed out after " + acquireTimeoutMillis + " ms waiting for a connection");
+        }
+
+        try {
+            PooledConnection pooled = takeValidIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            Lease lease = new Lease(pooled);
+            borrowed.put(lease, System.currentTimeMillis());
+            acquireCount.increment();
+            acquireNanos.add(System.nanoTime() - start);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops the housekeeping thread. Borrowed connections are closed as they
+     * are returned.
+     */
+    public void shutdown() {
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * @return the number of connections currently lent out
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of threads currently blocked waiting for a connection
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * @return the number of physical connections currently open
+     */
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * @return the number of borrow attempts that gave up after the acquire timeout
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /**
+     * @return the mean time, in microseconds, spent obtaining a connection
+     */
+    public double getAverageAcquireMicros() {
+        long count = acquireCount.sum();
+        return count == 0 ? 0 : acquireNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * @return the number of prepareStatement calls served from a statement cache
+     */
+    public long getStatementCacheHits() {
+        return statementHits.sum();
+    }
+
+    /**
+     * @return the number of prepareStatement calls that had to prepare a new statement
+     */
+    public long getStatementCacheMisses() {
+        return statementMisses.sum();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isValid(pooled)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return !pooled.physical.isClosed() && pooled.physical.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = dataSource.getConnection();
+        total.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(Lease lease) {
+        if (borrowed.remove(lease) == null) {
+            return;
+        }
+        PooledConnection pooled = lease.pooled;
+        lease.returnStatements();
+        try {
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            if (housekeeper.isShutdown()) {
+                discard(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.statements.clear();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOG.warn("Failed to close pooled connection", e);
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        for (Map.Entry<Lease, Long> entry : borrowed.entrySet()) {
+            Lease lease = entry.getKey();
+            if (lease.stack != null && !lease.reported && now - entry.getValue() > leakThresholdMillis) {
+                lease.reported = true;
+                LOG.warn("Connection held for more than {} ms, possible leak. Borrowed at:",
+                        leakThresholdMillis, lease.stack);
+            }
+        }
+
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && total.get() > minSize) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastUsed > idleTimeoutMillis && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        final StatementCache statements = new StatementCache(statementCacheSize, statementHits, statementMisses);
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * A single borrow of a pooled connection. Each borrow gets its own proxy so that closing a stale reference
+     * can never return a connection that has since been lent to someone else.
+     */
+    private class Lease implements InvocationHandler {
+        final PooledConnection pooled;
+        final Connection proxy;
+        // null unless leaks are detected: filling in a stack trace on every borrow is costly
+        final Throwable stack = leakThresholdMillis > 0
+                ? new Throwable("Connection borrowed by thread " + Thread.currentThread().getName()) : null;
+        final List<CachedStatement> outstanding = new ArrayList<>();
+        volatile boolean closed;
+        volatile boolean reported;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if (method.getName().equals("prepareStatement") && args.length <= 2 && args[0] instanceof String
+                    && (args.length == 1 || args[1] instanceof Integer)) {
+                int autoGeneratedKeys = args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1];
+                return prepare((String) args[0], autoGeneratedKeys);
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            String key = StatementCache.key(sql, autoGeneratedKeys);
+            PreparedStatement statement = pooled.statements.take(key);
+            if (statement == null) {
+                statement = pooled.physical.prepareStatement(sql, autoGeneratedKeys);
+            }
+            CachedStatement cached = new CachedStatement(this, key, statement);
+            outstanding.add(cached);
+            return cached.proxy;
+        }
+
+        /**
+         * Puts every statement the borrower did not close back into the cache.
+         */
+        void returnStatements() {
+            for (CachedStatement cached : new ArrayList<>(outstanding)) {
+                cached.giveBack();
+            }
+        }
+    }
+
+    /**
+     * A prepared statement lent out from a connection's statement cache. close() puts it back in the cache.
+     */
+    private static class CachedStatement implements InvocationHandler {
+        final Lease lease;
+        final String key;
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        boolean returned;
+
+        CachedStatement(Lease lease, String key, PreparedStatement statement) {
+            this.lease = lease;
+            this.key = key;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        void giveBack() {
+            if (!returned) {
+                returned = true;
+                lease.outstanding.remove(this);
+                lease.pooled.statements.put(key, statement);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack();
+                    return null;
+                case "isClosed":
+                    return returned || statement.isClosed();
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
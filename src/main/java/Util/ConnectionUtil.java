@@ -2,26 +2,50 @@ package Util;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are lent out by a bounded {@link ConnectionPool}. Callers must close
+ * the connection they receive to return it to the pool. The pool can be tuned with
+ * the system properties db.pool.minSize, db.pool.maxSize, db.pool.acquireTimeoutMs,
+ * db.pool.idleTimeoutMs and db.pool.leakThresholdMs, which is 0 (no leak detection) by
+ * default. Each pooled connection caches up to db.pool.statementCacheSize prepared
+ * statements.
+ *
+ * db.readerUrls lists reader databases, comma separated, such as local H2 files next
+ * to the writer. Each gets a pool sized like the writer's, and {@link ReadReplicas}
+ * keeps them in step with it. The DAOs send reads through {@link #getReadConnection()}
+ * and report the rows their writes change through {@link #rowChanged(String, int...)}.
+ * Without readers every read goes to the writer, as before.
+ *
+ * Message IDs are assigned before the insert by {@link #getMessageIds()}, which reserves
+ * db.idBlockSize IDs (100 by default) from message_id_seq per round trip.
  */
 public class ConnectionUtil {
+	private static final Logger LOG = LoggerFactory.getLogger(ConnectionUtil.class);
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. The db.url system property
+	 * overrides it, which the benchmarks use to keep their data separate.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,30 +56,147 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Schema migrations applied to an existing database by {@link #migrateDatabase()}, in order.
+	 * Each script must be safe to run more than once.
+	 */
+	private static final String[] MIGRATIONS = {
+		"migrations/001_message_posted_by_index.sql",
+		"migrations/002_follow_table.sql",
+		"migrations/003_message_time_posted_index.sql",
+		"migrations/004_message_id_sequence.sql"
+	};
+
+	/**
+	 * DataSource for physical connections. The pool opens connections from here as needed.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
+
+	/**
+	 * Bounded pool that hands out and takes back connections.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * The reader databases from db.readerUrls, or null if there are none.
+	 */
+	private static ReadReplicas readReplicas;
+
+	/**
+	 * Hands out message IDs from message_id_seq.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static SequenceIdGenerator messageIds;
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * static initialization block to establish credentials for the DataSource and build the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = newPool(dataSource);
+		messageIds = new SequenceIdGenerator(pool, "message_id_seq", Integer.getInteger("db.idBlockSize", 100));
+		String readerUrls = System.getProperty("db.readerUrls", "");
+		List<ConnectionPool> readers = new ArrayList<>();
+		for (String readerUrl : readerUrls.split(",")) {
+			if (!readerUrl.isBlank()) {
+				readers.add(openPool(readerUrl.trim()));
+			}
+		}
+		if (!readers.isEmpty()) {
+			readReplicas = new ReadReplicas(pool, readers);
+		}
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return a pool for another database, such as a reader or a shard, with the writer's
+	 *         credentials and the same db.pool.* settings
+	 */
+	public static ConnectionPool openPool(String databaseUrl) {
+		JdbcDataSource source = new JdbcDataSource();
+		source.setURL(databaseUrl);
+		source.setUser(username);
+		source.setPassword(password);
+		return newPool(source);
+	}
+
+	private static ConnectionPool newPool(JdbcDataSource source) {
+		return new ConnectionPool(source,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", 10),
+				Long.getLong("db.pool.acquireTimeoutMs", 5_000),
+				Long.getLong("db.pool.idleTimeoutMs", 60_000),
+				Long.getLong("db.pool.leakThresholdMs", 0),
+				Integer.getInteger("db.pool.statementCacheSize", 32));
+	}
+
+	/**
+	 * @return an active connection to the database, which must be closed to return it to the pool
+	 * @throws DatabaseUnavailableException if the pool timed out or the database cannot be reached
 	 */
 	public static Connection getConnection() {
 		try {
 			return pool.getConnection();
 		} catch (SQLException e) {
-			e.printStackTrace();
+			LOG.warn("op=getConnection failed reason={}", e.getMessage());
+			throw new DatabaseUnavailableException(e);
 		}
+	}
 
-		return null;
+	/**
+	 * @return an active connection for a read: to a reader that has every write of the current
+	 *         session (see {@link ReadConsistency}) when there is one, and to the writer otherwise
+	 * @throws DatabaseUnavailableException if the writer is needed and no connection to it can be had
+	 */
+	public static Connection getReadConnection() {
+		if (readReplicas != null) {
+			try {
+				Connection connection = readReplicas.getConnection(ReadConsistency.current());
+				if (connection != null) {
+					return connection;
+				}
+			} catch (SQLException e) {
+				LOG.warn("op=getReadConnection falling back to writer reason={}", e.getMessage());
+			}
+		}
+		return getConnection();
+	}
+
+	/**
+	 * Reports a committed change to a row, so the readers copy it, and records its version as a write
+	 * of the current session. Does nothing without readers.
+	 *
+	 * @param table the table the row is in
+	 * @param key the row's primary key values
+	 */
+	public static void rowChanged(String table, int... key) {
+		if (readReplicas != null) {
+			long version = readReplicas.changed(table, key);
+			ReadConsistency consistency = ReadConsistency.current();
+			if (consistency != null) {
+				consistency.wrote(version);
+			}
+		}
+	}
+
+	/**
+	 * @return the reader databases, or null if db.readerUrls names none
+	 */
+	public static ReadReplicas getReadReplicas() {
+		return readReplicas;
+	}
+
+	/**
+	 * @return the generator of message IDs for the main database
+	 */
+	public static IdGenerator getMessageIds() {
+		return messageIds;
+	}
+
+	/**
+	 * @return the connection pool, for reading its gauges (active, idle, waiting, acquire latency)
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
 	}
 
 	/**
@@ -66,9 +207,43 @@ public class ConnectionUtil {
 	public static void resetTestDatabase() {
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
-			e.printStackTrace();
+			try (Connection connection = getConnection()) {
+				RunScript.execute(connection, sqlReader);
+			}
+			// the script recreates message_id_seq, so IDs reserved from the old one are dropped
+			messageIds.reset();
+			resyncReaders();
+		} catch (SQLException | IOException e) {
+			LOG.error("op=resetTestDatabase failed", e);
+		}
+	}
+
+	/**
+	 * Brings a database created from an older SocialMedia.sql up to date by running the
+	 * migration scripts on the classpath. Fresh databases built from SocialMedia.sql
+	 * already contain every change, and the scripts leave them untouched. The readers
+	 * are then copied from the writer.
+	 */
+	public static void migrateDatabase() {
+		try (Connection connection = getConnection()) {
+			for (String migration : MIGRATIONS) {
+				InputStream script = ConnectionUtil.class.getClassLoader().getResourceAsStream(migration);
+				if (script == null) {
+					throw new FileNotFoundException(migration);
+				}
+				try (InputStreamReader reader = new InputStreamReader(script, StandardCharsets.UTF_8)) {
+					RunScript.execute(connection, reader);
+				}
+			}
+			resyncReaders();
+		} catch (SQLException | IOException e) {
+			LOG.error("op=migrateDatabase failed", e);
+		}
+	}
+
+	private static void resyncReaders() throws SQLException, IOException {
+		if (readReplicas != null) {
+			readReplicas.resync();
 		}
 	}
 }
@@ -0,0 +1,14 @@
+package Util;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when no database connection can be had: the pool stayed exhausted for its whole acquire timeout,
+ * or the database could not be reached. It is unchecked so it passes the DAOs' SQLException handling,
+ * which would turn it into an empty result, and the controller answers it with 503 Service Unavailable.
+ */
+public class DatabaseUnavailableException extends RuntimeException {
+    public DatabaseUnavailableException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,292 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The ExpiringCache class is a bounded, in-process cache. Entries are evicted least recently used first once the
+ * cache is full, and expire a fixed time after they were stored.
+ *
+ * Keys are spread over segments by hash, each with its own lock and LRU order, so lookups of different keys rarely
+ * contend and eviction is least recently used within a segment. Small caches use a single segment.
+ *
+ * Loads are read-through: {@link #get(Object, Function)} calls the loader on a miss, and
+ * {@link #getAll(Iterable, Function)} loads all of its misses with one call. A miss first leaves a reservation
+ * under its key, and the loaded value only replaces that reservation; a put or invalidation of the key while it
+ * is loading removes the reservation, so a slow read can never overwrite a newer write, while writes to other
+ * keys do not affect it. Loaders returning null are not cached.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ExpiringCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final long ttlNanos;
+    private final List<Segment> segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries held
+     * @param ttlMillis how long an entry stays valid after it is stored
+     */
+    public ExpiringCache(int maxSize, long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        int count = Math.max(1, Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize / MIN_SEGMENT_SIZE)));
+        this.segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(new Segment(maxSize / count + (i < maxSize % count ? 1 : 0)));
+        }
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the cached value, or null if it is absent or expired
+     */
+    public V getIfPresent(K key) {
+        V value = segmentFor(key).getIfPresent(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value, calling the loader and caching its result on a miss.
+     *
+     * @param key the key to look up
+     * @param loader computes the value on a miss; may return null, which is not cached
+     * @return the cached or loaded value
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        Segment segment = segmentFor(key);
+        Entry<V> reservation = segment.reserve(key);
+        long start = System.nanoTime();
+        try {
+            value = loader.apply(key);
+        } finally {
+            loadNanos.add(System.nanoTime() - start);
+            loadCount.increment();
+            segment.complete(key, reservation, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached values for several keys, loading every miss with a single loader call.
+     *
+     * @param keys the keys to look up
+     * @param loader computes the values for the missed keys; keys it leaves out are absent and not cached
+     * @return the cached or loaded value of every key that has one
+     */
+    public Map<K, V> getAll(Iterable<K> keys, Function<List<K>, Map<K, V>> loader) {
+        Map<K, V> values = new HashMap<>();
+        List<K> missing = new ArrayList<>();
+        for (K key : keys) {
+            V value = getIfPresent(key);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty()) {
+            return values;
+        }
+        List<Entry<V>> reservations = new ArrayList<>(missing.size());
+        for (K key : missing) {
+            reservations.add(segmentFor(key).reserve(key));
+        }
+        Map<K, V> loaded = Map.of();
+        long start = System.nanoTime();
+        try {
+            loaded = loader.apply(missing);
+        } finally {
+            loadNanos.add(System.nanoTime() - start);
+            loadCount.increment();
+            for (int i = 0; i < missing.size(); i++) {
+                K key = missing.get(i);
+                segmentFor(key).complete(key, reservations.get(i), loaded.get(key));
+            }
+        }
+        values.putAll(loaded);
+        return values;
+    }
+
+    /**
+     * Stores a value, replacing any cached one. Nothing orders it against other writers, so it suits only
+     * values no concurrent write can change; otherwise invalidate instead.
+     */
+    public void put(K key, V value) {
+        segmentFor(key).put(key, value);
+    }
+
+    /**
+     * Removes a key so the next read goes to the source.
+     */
+    public void invalidate(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the fraction of lookups answered from the cache, 0 if there were none
+     */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of entries dropped for size or expiry
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the mean time, in microseconds, spent in the loader on a miss
+     */
+    public double getAverageLoadMicros() {
+        long count = loadCount.sum();
+        return count == 0 ? 0 : loadNanos.sum() / 1000.0 / count;
+    }
+
+    private Segment segmentFor(K key) {
+        int h = key.hashCode();
+        return segments.get((h ^ (h >>> 16)) & (segments.size() - 1));
+    }
+
+    /**
+     * One LRU-ordered slice of the cache. An entry with a null value is a reservation for a load in flight: it is
+     * never returned, and only the load that holds it may replace it with a value.
+     */
+    private final class Segment {
+        private final LinkedHashMap<K, Entry<V>> entries;
+
+        Segment(int maxSize) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > maxSize) {
+                        if (eldest.getValue().value != null) {
+                            evictions.increment();
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized V getIfPresent(K key) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null || entry.value == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.storedAt < ttlNanos) {
+                return entry.value;
+            }
+            entries.remove(key);
+            evictions.increment();
+            return null;
+        }
+
+        /**
+         * Returns the reservation a load of the key should complete: a load already in flight shares its
+         * reservation, and a value stored since the caller missed is returned as is, so the load will not replace it.
+         */
+        synchronized Entry<V> reserve(K key) {
+            Entry<V> current = entries.get(key);
+            if (current != null && (current.value == null || System.nanoTime() - current.storedAt < ttlNanos)) {
+                return current;
+            }
+            Entry<V> reservation = new Entry<>(null, 0);
+            entries.put(key, reservation);
+            return reservation;
+        }
+
+        /**
+         * Replaces the reservation with the loaded value, or drops it if there is none. Does nothing if the
+         * reservation was already completed, or removed by a write.
+         */
+        synchronized void complete(K key, Entry<V> reservation, V value) {
+            if (reservation.value != null || entries.get(key) != reservation) {
+                return;
+            }
+            if (value != null) {
+                entries.put(key, new Entry<>(value, System.nanoTime()));
+            } else {
+                entries.remove(key);
+            }
+        }
+
+        synchronized void put(K key, V value) {
+            entries.put(key, new Entry<>(value, System.nanoTime()));
+        }
+
+        synchronized void remove(K key) {
+            entries.remove(key);
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long storedAt;
+
+        Entry(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
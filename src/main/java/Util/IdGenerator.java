@@ -0,0 +1,18 @@
+package Util;
+
+import java.sql.SQLException;
+
+/**
+ * The IdGenerator interface hands out row IDs before the row is written, so an insert need not read its
+ * key back from the database, and a batch knows every row's ID before it runs.
+ *
+ * IDs from one generator increase in the order they are handed out, so they order rows by when they were
+ * created and can serve as page cursors. Implementations must be safe to call from many threads.
+ */
+public interface IdGenerator {
+    /**
+     * @return an ID larger than every ID this generator returned before
+     * @throws SQLException if no more IDs could be reserved
+     */
+    int nextId() throws SQLException;
+}
@@ -0,0 +1,82 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The IntBitmap class is a thread-safe set of non-negative ints stored as one bit per value.
+ *
+ * The value range is split into pages of 65536 bits (8 KB) that are only allocated once a value in them is
+ * added, so dense id ranges cost about one bit per id (10 million sequential ids fit in about 1.2 MB) and
+ * sparse ones cost only the pages they touch. Lookups are two array reads and never lock. Values cannot be
+ * removed.
+ */
+public class IntBitmap {
+    private static final int PAGE_BITS = 16;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / 64;
+
+    private final AtomicReferenceArray<AtomicLongArray> pages =
+            new AtomicReferenceArray<>(1 << (31 - PAGE_BITS));
+    private final LongAdder size = new LongAdder();
+    private final LongAdder allocatedPages = new LongAdder();
+
+    /**
+     * Adds a value to the set.
+     *
+     * @return true if the value was not already present
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IntBitmap holds non-negative values only: " + value);
+        }
+        int pageIndex = value >>> PAGE_BITS;
+        AtomicLongArray page = pages.get(pageIndex);
+        if (page == null) {
+            AtomicLongArray created = new AtomicLongArray(WORDS_PER_PAGE);
+            if (pages.compareAndSet(pageIndex, null, created)) {
+                allocatedPages.increment();
+                page = created;
+            } else {
+                page = pages.get(pageIndex);
+            }
+        }
+        int word = (value & ((1 << PAGE_BITS) - 1)) >>> 6;
+        long mask = 1L << value;
+        long current = page.get(word);
+        while ((current & mask) == 0) {
+            if (page.compareAndSet(word, current, current | mask)) {
+                size.increment();
+                return true;
+            }
+            current = page.get(word);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value has been added; always false for negative values
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        AtomicLongArray page = pages.get(value >>> PAGE_BITS);
+        return page != null && (page.get((value & ((1 << PAGE_BITS) - 1)) >>> 6) & (1L << value)) != 0;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public long size() {
+        return size.sum();
+    }
+
+    /**
+     * @return the bytes held by allocated pages, excluding the fixed page table
+     */
+    public long getAllocatedBytes() {
+        return allocatedPages.sum() * WORDS_PER_PAGE * Long.BYTES;
+    }
+}
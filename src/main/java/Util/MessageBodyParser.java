@@ -0,0 +1,163 @@
+package Util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import Model.Message;
+
+/**
+ * The MessageBodyParser class reads the JSON bodies of POST /messages and PATCH /messages/{id} with a streaming
+ * JsonParser straight from the request stream. Nothing is buffered into a String or a Map first.
+ *
+ * Only message_text, posted_by and time_posted_epoch are read; other fields are skipped. The body size is
+ * capped while reading, so an oversized body is rejected without reading the rest. A message_text longer
+ * than {@link #MAX_TEXT_LENGTH} is rejected as soon as that field has been parsed.
+ */
+public class MessageBodyParser {
+    /**
+     * The longest message_text accepted, matching the message_text column.
+     */
+    public static final int MAX_TEXT_LENGTH = 255;
+
+    private final JsonFactory jsonFactory;
+    private final int maxBodyBytes;
+
+    /**
+     * @param jsonFactory the factory parsers are created from
+     * @param maxBodyBytes the largest body read; anything longer is rejected
+     */
+    public MessageBodyParser(JsonFactory jsonFactory, int maxBodyBytes) {
+        this.jsonFactory = jsonFactory;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * @param body the request body
+     * @param contentLength the declared body length, or -1 if unknown
+     * @return the fields found; absent ones are left at their defaults
+     * @throws BodyTooLargeException if the body is longer than the configured limit
+     * @throws IllegalArgumentException if the body is not a JSON object of the expected field types, or
+     *         message_text is too long
+     * @throws IOException if reading the request fails
+     */
+    public Message parse(InputStream body, long contentLength) throws IOException {
+        if (contentLength > maxBodyBytes) {
+            throw new BodyTooLargeException(maxBodyBytes);
+        }
+        Message message = new Message();
+        try (JsonParser parser = jsonFactory.createParser(new LimitedInputStream(body, maxBodyBytes))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "message_text":
+                        message.setMessage_text(readText(parser, value));
+                        break;
+                    case "posted_by":
+                        long postedBy = readNumber(parser, value);
+                        if (postedBy != (int) postedBy) {
+                            throw new IllegalArgumentException("posted_by is out of range");
+                        }
+                        message.setPosted_by((int) postedBy);
+                        break;
+                    case "time_posted_epoch":
+                        message.setTime_posted_epoch(readNumber(parser, value));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new IllegalArgumentException("Malformed JSON object");
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON body", e);
+        }
+        return message;
+    }
+
+    private static String readText(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            throw new IllegalArgumentException("message_text must be a string");
+        }
+        // checked before the String is built
+        if (parser.getTextLength() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("message_text is longer than " + MAX_TEXT_LENGTH);
+        }
+        return parser.getText();
+    }
+
+    private static long readNumber(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        if (value == JsonToken.VALUE_STRING) {
+            try {
+                return Long.parseLong(parser.getText());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected a number", e);
+            }
+        }
+        throw new IllegalArgumentException("Expected a number");
+    }
+
+    /**
+     * Thrown when a request body is longer than the parser accepts.
+     */
+    public static class BodyTooLargeException extends IOException {
+        public BodyTooLargeException(int maxBodyBytes) {
+            super("Request body is longer than " + maxBodyBytes + " bytes");
+        }
+    }
+
+    /**
+     * Fails the read that would take the stream past the limit, so a body without a Content-Length is
+     * still capped.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private final int limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(int n) throws IOException {
+            count += n;
+            if (count > limit) {
+                throw new BodyTooLargeException(limit);
+            }
+        }
+    }
+}
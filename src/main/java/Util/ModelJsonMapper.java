@@ -0,0 +1,134 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import Model.Account;
+import Model.Message;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The ModelJsonMapper class is the Javalin JSON mapper for the API. It keeps one ObjectWriter and ObjectReader
+ * per type, so the serializer lookup happens once instead of per call, and registers the Blackbird module so
+ * property access uses generated lambdas instead of reflection. The writers for Message, Account and a list of
+ * messages are built up front.
+ *
+ * {@link #writeTo(OutputStream, Object, Type)} writes straight to a stream through Jackson's recycled buffers,
+ * skipping the String and byte[] copies that ctx.json makes.
+ */
+public class ModelJsonMapper implements JsonMapper {
+    private final ObjectMapper objectMapper;
+    private final ConcurrentHashMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final JavaType messageListType;
+
+    /**
+     * @param objectMapper the mapper to configure and build writers and readers from
+     */
+    public ModelJsonMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        objectMapper.registerModule(new BlackbirdModule());
+        // the response stream belongs to Jetty, which closes it
+        objectMapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        messageListType = objectMapper.getTypeFactory().constructCollectionType(List.class, Message.class);
+        writerFor(Message.class);
+        writerFor(Account.class);
+        writerFor(messageListType);
+        readerFor(Message.class);
+        readerFor(Account.class);
+    }
+
+    /**
+     * @return the type of a List of Message, for {@link #writeTo(OutputStream, Object, Type)}
+     */
+    public JavaType messageListType() {
+        return messageListType;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return the cached writer for a type
+     */
+    public ObjectWriter writerFor(Type type) {
+        return writers.computeIfAbsent(type, t -> objectMapper.writerFor(objectMapper.constructType(t)));
+    }
+
+    /**
+     * @return the cached reader for a type
+     */
+    public ObjectReader readerFor(Type type) {
+        return readers.computeIfAbsent(type, t -> objectMapper.readerFor(objectMapper.constructType(t)));
+    }
+
+    /**
+     * Serializes a value directly to a stream, leaving the stream open.
+     */
+    public void writeTo(OutputStream out, Object value, Type type) throws IOException {
+        writerFor(type).writeValue(out, value);
+    }
+
+    /**
+     * Strings are passed through as already-serialized JSON, as Javalin's default mapper does.
+     */
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        try {
+            return writerFor(type).writeValueAsString(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Serializes in memory, instead of the default mapper's piped stream and extra thread.
+     */
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        if (obj instanceof String) {
+            return new ByteArrayInputStream(((String) obj).getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            return new ByteArrayInputStream(writerFor(type).writeValueAsBytes(obj));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
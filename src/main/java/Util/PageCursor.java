@@ -0,0 +1,88 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The PageCursor class turns the last message_id of a page into an opaque token that clients pass back as
+ * the "after" query parameter to fetch the next page. Clients must not rely on the token's contents.
+ *
+ * Pages ordered by time_posted_epoch use a second kind of cursor holding both the time and the message_id
+ * of the last message, since many messages can share a time.
+ */
+public final class PageCursor {
+    private static final String PREFIX = "m:";
+    private static final String TIME_PREFIX = "t:";
+
+    private PageCursor() {
+    }
+
+    /**
+     * @param lastMessageId the message_id of the last message on the current page
+     * @return an opaque cursor pointing just past that message
+     */
+    public static String encode(int lastMessageId) {
+        byte[] raw = (PREFIX + lastMessageId).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    /**
+     * @param cursor a cursor produced by {@link #encode(int)}
+     * @return the message_id the cursor points past
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static int decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (!raw.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return Integer.parseInt(raw.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * @param timePosted the time_posted_epoch of the last message on the current page
+     * @param lastMessageId the message_id of the last message on the current page
+     * @return an opaque cursor pointing just past that message in time order
+     */
+    public static String encodeTime(long timePosted, int lastMessageId) {
+        byte[] raw = (TIME_PREFIX + timePosted + ":" + lastMessageId).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    /**
+     * @param cursor a cursor produced by {@link #encodeTime(long, int)}
+     * @return the position the cursor points past
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static TimePosition decodeTime(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = raw.lastIndexOf(':');
+            if (!raw.startsWith(TIME_PREFIX) || separator <= TIME_PREFIX.length()) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new TimePosition(
+                    Long.parseLong(raw.substring(TIME_PREFIX.length(), separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * A message's position in (time_posted_epoch, message_id) order.
+     */
+    public static final class TimePosition {
+        public final long timePosted;
+        public final int messageId;
+
+        public TimePosition(long timePosted, int messageId) {
+            this.timePosted = timePosted;
+            this.messageId = messageId;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The ReadConsistency class carries one session's read-your-writes state while its request runs, so that
+ * {@link ConnectionUtil#getReadConnection()} only hands out a reader database that already has the
+ * session's writes. The controller creates one per request from the session's cookie and sets it on the
+ * request thread; {@link Service.DatabaseExecutor} passes it on to the database thread a task runs on.
+ *
+ * Versions are the ones {@link ReadReplicas} gives to shipped changes, and only mean something to the
+ * process that gave them, so they are stored together with that process's epoch.
+ */
+public final class ReadConsistency {
+    private static final ThreadLocal<ReadConsistency> CURRENT = new ThreadLocal<>();
+    private static final ReadConsistency LATEST = new ReadConsistency(0);
+
+    private final long readAfter;
+    private final AtomicLong lastWrite = new AtomicLong();
+
+    /**
+     * @param readAfter the version reads must see, from the session's earlier writes
+     */
+    public ReadConsistency(long readAfter) {
+        this.readAfter = readAfter;
+    }
+
+    /**
+     * @return the state of the session whose request this thread is running, or null outside a request
+     */
+    public static ReadConsistency current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes the state current on this thread; null clears it.
+     */
+    public static void set(ReadConsistency consistency) {
+        if (consistency == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(consistency);
+        }
+    }
+
+    /**
+     * Runs a read that must see every change made so far by any session, as when filling a cache shared by
+     * all sessions, which would otherwise keep a lagging reader's row after the write that changed it.
+     */
+    public static <T> T latest(Supplier<T> read) {
+        ReadConsistency previous = CURRENT.get();
+        CURRENT.set(LATEST);
+        try {
+            return read.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    /**
+     * @return true inside {@link #latest(Supplier)}
+     */
+    public boolean isLatest() {
+        return this == LATEST;
+    }
+
+    /**
+     * @return the version a reader must have applied to serve this session
+     */
+    public long getReadAfter() {
+        return Math.max(readAfter, lastWrite.get());
+    }
+
+    /**
+     * Records that this session's write was shipped as the given version.
+     */
+    public void wrote(long version) {
+        lastWrite.accumulateAndGet(version, Math::max);
+    }
+
+    /**
+     * @return the version of this session's latest write during the request, or 0 if it wrote nothing
+     */
+    public long getLastWrite() {
+        return lastWrite.get();
+    }
+
+    /**
+     * @return the value the controller stores in the session cookie: the epoch and the version
+     */
+    public static String encode(long epoch, long version) {
+        return Long.toHexString(epoch) + "." + version;
+    }
+
+    /**
+     * @return the version in a cookie value written by {@link #encode(long, long)}, or 0 if the value is
+     *         missing, malformed or from another epoch; readers are resynchronized when a process starts, so
+     *         they already hold every write of an earlier one
+     */
+    public static long decode(String value, long epoch) {
+        if (value == null) {
+            return 0;
+        }
+        int dot = value.indexOf('.');
+        try {
+            if (dot < 0 || Long.parseUnsignedLong(value.substring(0, dot), 16) != epoch) {
+                return 0;
+            }
+            return Math.max(0, Long.parseLong(value.substring(dot + 1)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package Util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ReadReplicas class keeps reader databases in step with the writer, so reads can be spread over them
+ * instead of waiting on the writer's file lock.
+ *
+ * The DAOs report the key of every row they change, after their transaction commits, through
+ * {@link #changed(String, int...)}. Each report gets the next version. A shipper thread takes reports in
+ * batches, reads the current state of each row from the writer once, and applies it to every reader with a
+ * MERGE, or a DELETE if the row is gone. Copying the current row, rather than the change that was made,
+ * makes the copy correct whatever order concurrent writers reported in, and applying it twice harmless.
+ * A reader has applied version v once every change reported up to v is in it.
+ *
+ * {@link #resync()} copies the whole writer database to every reader. It runs at startup, so readers left
+ * behind by a stopped process catch up.
+ *
+ * Reading a batch from the writer, or applying it to a reader, is retried a few times before it is given
+ * up, so a brief failure such as a pool timeout under load costs only a delay. A reader that misses a batch
+ * serves no reads until the shipper thread has copied the writer to it again. The copy is retried, waiting
+ * twice as long after each failure, until it succeeds.
+ */
+public class ReadReplicas {
+    private static final Logger LOG = LoggerFactory.getLogger(ReadReplicas.class);
+    private static final int BATCH_SIZE = 256;
+    private static final int ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 50;
+    private static final long RESYNC_DELAY_MS = 500;
+    private static final long MAX_RESYNC_DELAY_MS = 30_000;
+
+    private final ConnectionPool writer;
+    private final List<Reader> readers = new ArrayList<>();
+    private final LinkedBlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    private final Map<String, String[]> keyColumns = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    // held while a batch is applied, so a resync never interleaves with one
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private final long epoch = new SecureRandom().nextLong();
+    private long shippedVersion;
+    private final Thread shipper;
+    // only touched by the shipper thread
+    private long resyncDelayMs = RESYNC_DELAY_MS;
+    private long nextResyncAt = System.nanoTime();
+
+    private static final class Reader {
+        final int index;
+        final ConnectionPool pool;
+        volatile long appliedVersion;
+        volatile boolean healthy;
+
+        Reader(int index, ConnectionPool pool) {
+            this.index = index;
+            this.pool = pool;
+        }
+    }
+
+    private static final class Change {
+        final long version;
+        final String table;
+        final int[] key;
+
+        Change(long version, String table, int[] key) {
+            this.version = version;
+            this.table = table;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @param writer the pool of the database every write goes to
+     * @param readers pools of the reader databases; they serve nothing until {@link #resync()}
+     */
+    public ReadReplicas(ConnectionPool writer, List<ConnectionPool> readers) {
+        this.writer = writer;
+        for (ConnectionPool pool : readers) {
+            this.readers.add(new Reader(this.readers.size(), pool));
+        }
+        this.shipper = new Thread(this::ship, "db-replica-shipper");
+        shipper.setDaemon(true);
+        shipper.start();
+    }
+
+    /**
+     * Reports that a row was inserted, updated or deleted on the writer. Call it after the change commits.
+     *
+     * @param table the table the row is in
+     * @param key the row's primary key values, in key column order
+     * @return the change's version
+     */
+    public long changed(String table, int... key) {
+        // versions are handed out in queue order, so a batch's last version covers everything before it
+        synchronized (changes) {
+            long version = ++shippedVersion;
+            changes.add(new Change(version, table, key));
+            return version;
+        }
+    }
+
+    /**
+     * Borrows a connection to a reader that has applied the version the consistency asks for, taking the
+     * readers in turn.
+     *
+     * @param consistency the session's state, or null for a read with no session
+     * @return the connection, or null if no reader has caught up and the writer must serve the read
+     */
+    public Connection getConnection(ReadConsistency consistency) throws SQLException {
+        long readAfter = consistency == null ? 0
+                : consistency.isLatest() ? getShippedVersion() : consistency.getReadAfter();
+        int start = Math.floorMod(next.getAndIncrement(), readers.size());
+        for (int i = 0; i < readers.size(); i++) {
+            Reader reader = readers.get((start + i) % readers.size());
+            if (reader.healthy && reader.appliedVersion >= readAfter) {
+                return reader.pool.getConnection();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces every reader's contents with a copy of the writer database, and lets failed readers serve
+     * reads again. Changes reported before the copy starts are in it.
+     */
+    public void resync() throws SQLException, IOException {
+        applyLock.lock();
+        try {
+            copy(readers, true);
+        } finally {
+            applyLock.unlock();
+        }
+    }
+
+    /**
+     * Copies the writer to the given readers and lets them serve reads again. Without clearQueue the queued
+     * changes are still applied afterwards; those the copy already holds are applied again, which is harmless.
+     */
+    private void copy(List<Reader> targets, boolean clearQueue) throws SQLException, IOException {
+        Path script = Files.createTempFile("replica", ".sql");
+        try {
+            long version;
+            synchronized (changes) {
+                version = shippedVersion;
+                if (clearQueue) {
+                    changes.clear();
+                }
+            }
+            String path = script.toAbsolutePath().toString().replace("'", "''");
+            try (Connection connection = writer.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("SCRIPT TO '" + path + "'");
+            }
+            for (Reader reader : targets) {
+                try (Connection connection = reader.pool.getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.execute("DROP ALL OBJECTS");
+                    statement.execute("RUNSCRIPT FROM '" + path + "'");
+                }
+                reader.appliedVersion = version;
+                reader.healthy = true;
+            }
+            LOG.info("op=resync readers={} version={}", targets.size(), version);
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    /**
+     * Waits until every healthy reader has applied a version, for tests and benchmarks.
+     *
+     * @return true if they did before the timeout
+     */
+    public boolean awaitApplied(long version, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            boolean applied = true;
+            for (Reader reader : readers) {
+                applied &= !reader.healthy || reader.appliedVersion >= version;
+            }
+            if (applied) {
+                return true;
+            }
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * @return the epoch that versions from this instance are stored with, see {@link ReadConsistency}
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the version of the latest change reported
+     */
+    public long getShippedVersion() {
+        synchronized (changes) {
+            return shippedVersion;
+        }
+    }
+
+    /**
+     * @return the version the reader has applied, for lag gauges
+     */
+    public long getAppliedVersion(int reader) {
+        return readers.get(reader).appliedVersion;
+    }
+
+    /**
+     * @return the number of reader databases
+     */
+    public int getReaderCount() {
+        return readers.size();
+    }
+
+    /**
+     * @return true if the reader is serving reads, false while it waits to be copied again
+     */
+    public boolean isHealthy(int reader) {
+        return readers.get(reader).healthy;
+    }
+
+    private void ship() {
+        List<Change> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                // wake up now and then without changes, to retry copying to failed readers
+                Change first = changes.poll(RETRY_DELAY_MS * 2, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    changes.drainTo(batch, BATCH_SIZE - 1);
+                }
+                applyLock.lock();
+                try {
+                    if (!batch.isEmpty()) {
+                        apply(batch);
+                    }
+                    resyncFailedReaders();
+                } finally {
+                    applyLock.unlock();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    private void apply(List<Change> batch) throws InterruptedException {
+        long version = batch.get(batch.size() - 1).version;
+        // one copy per row; a row keeps its first place, so it is never applied before a row it references
+        Map<String, Change> rows = new LinkedHashMap<>();
+        for (Change change : batch) {
+            rows.putIfAbsent(change.table + Arrays.toString(change.key), change);
+        }
+        List<Change> copied = new ArrayList<>(rows.values());
+        List<Object[]> states = new ArrayList<>(copied.size());
+        List<String[]> columns = new ArrayList<>(copied.size());
+        for (int attempt = 1; ; attempt++) {
+            states.clear();
+            columns.clear();
+            try (Connection connection = writer.getConnection()) {
+                for (Change change : copied) {
+                    read(connection, change, states, columns);
+                }
+                break;
+            } catch (SQLException e) {
+                if (attempt == ATTEMPTS) {
+                    // the rows are lost to every reader, so each must be copied again
+                    LOG.error("op=replicate failed reading writer version={}", version, e);
+                    for (Reader reader : readers) {
+                        fail(reader);
+                    }
+                    return;
+                }
+                LOG.warn("op=replicate retrying read of writer version={} attempt={} reason={}", version, attempt, e.getMessage());
+                Thread.sleep(RETRY_DELAY_MS * attempt);
+            }
+        }
+        for (Reader reader : readers) {
+            if (!reader.healthy) {
+                continue;
+            }
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    write(reader, copied, columns, states);
+                    // a batch taken before a resync may be older than the version the resync set
+                    reader.appliedVersion = Math.max(reader.appliedVersion, version);
+                    break;
+                } catch (SQLException e) {
+                    if (attempt == ATTEMPTS) {
+                        // a reader that missed a batch must not serve reads until it is copied again
+                        LOG.error("op=replicate failed reader={} version={}", reader.index, version, e);
+                        fail(reader);
+                        break;
+                    }
+                    LOG.warn("op=replicate retrying reader={} version={} attempt={} reason={}",
+                            reader.index, version, attempt, e.getMessage());
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                }
+            }
+        }
+    }
+
+    private void write(Reader reader, List<Change> copied, List<String[]> columns, List<Object[]> states)
+            throws SQLException {
+        try (Connection connection = reader.pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (int i = 0; i < copied.size(); i++) {
+                    write(connection, copied.get(i), columns.get(i), states.get(i));
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void fail(Reader reader) {
+        if (reader.healthy) {
+            reader.healthy = false;
+            nextResyncAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Copies the writer to every reader that missed a batch, once the delay since the last failed copy has
+     * passed.
+     */
+    private void resyncFailedReaders() {
+        List<Reader> failed = new ArrayList<>();
+        for (Reader reader : readers) {
+            if (!reader.healthy) {
+                failed.add(reader);
+            }
+        }
+        if (failed.isEmpty() || System.nanoTime() - nextResyncAt < 0) {
+            return;
+        }
+        try {
+            copy(failed, false);
+            resyncDelayMs = RESYNC_DELAY_MS;
+        } catch (SQLException | IOException e) {
+            LOG.error("op=resync failed readers={} retry_ms={}", failed.size(), resyncDelayMs, e);
+            nextResyncAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resyncDelayMs);
+            resyncDelayMs = Math.min(resyncDelayMs * 2, MAX_RESYNC_DELAY_MS);
+        }
+    }
+
+    private void read(Connection connection, Change change, List<Object[]> states, List<String[]> columns)
+            throws SQLException {
+        String[] keys = keyColumns(connection, change.table);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT * FROM " + change.table + " WHERE " + String.join(" = ? AND ", keys) + " = ?")) {
+            for (int i = 0; i < keys.length; i++) {
+                statement.setInt(i + 1, change.key[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    states.add(null);
+                    columns.add(null);
+                    return;
+                }
+                ResultSetMetaData metaData = rs.getMetaData();
+                String[] names = new String[metaData.getColumnCount()];
+                Object[] values = new Object[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = metaData.getColumnName(i + 1);
+                    values[i] = rs.getObject(i + 1);
+                }
+                states.add(values);
+                columns.add(names);
+            }
+        }
+    }
+
+    private void write(Connection connection, Change change, String[] names, Object[] values) throws SQLException {
+        String[] keys = keyColumns.get(change.table);
+        if (values == null) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM " + change.table + " WHERE " + String.join(" = ? AND ", keys) + " = ?")) {
+                for (int i = 0; i < keys.length; i++) {
+                    statement.setInt(i + 1, change.key[i]);
+                }
+                statement.executeUpdate();
+            }
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(names.length, "?"));
+        try (PreparedStatement statement = connection.prepareStatement("MERGE INTO " + change.table
+                + " (" + String.join(", ", names) + ") KEY (" + String.join(", ", keys) + ") VALUES (" + placeholders + ")")) {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the table's primary key columns, in key order, read once from the writer's metadata
+     */
+    private String[] keyColumns(Connection connection, String table) throws SQLException {
+        String[] keys = keyColumns.get(table);
+        if (keys != null) {
+            return keys;
+        }
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<Integer, String> bySequence = new TreeMap<>();
+        try (ResultSet rs = metaData.getPrimaryKeys(null, null, table.toUpperCase(Locale.ROOT))) {
+            while (rs.next()) {
+                bySequence.put(rs.getInt("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+            }
+        }
+        if (bySequence.isEmpty()) {
+            throw new SQLException("Table " + table + " has no primary key to replicate by");
+        }
+        keys = bySequence.values().toArray(new String[0]);
+        keyColumns.put(table, keys);
+        return keys;
+    }
+}
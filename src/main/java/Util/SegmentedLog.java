@@ -0,0 +1,299 @@
+package Util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+/**
+ * The SegmentedLog class is an append-only log of byte records stored in fixed-size, memory-mapped segment
+ * files in one directory.
+ *
+ * Every record is written as [int length][int CRC-32C][byte type][payload]. A position in the log (an LSN) is
+ * a byte offset from the start of the first segment ever written, and each segment file is named after the
+ * LSN it starts at, so old segments can be deleted once a snapshot covers them. A record never spans two
+ * segments; the unused end of a segment is left zeroed.
+ *
+ * Appending copies the record into the mapped segment and returns at once. {@link #awaitDurable(long)} then
+ * forces the log to disk up to that record. Callers that wait at the same time share one force: the first
+ * forces everything appended so far, and the others find their records already durable (group fsync).
+ *
+ * On open, the last segment is scanned to find the end of the log. The first record that is incomplete or
+ * fails its CRC, as a write torn by a crash would, ends the log; the rest of that segment is zeroed so later
+ * appends are never followed by stale bytes.
+ */
+public class SegmentedLog implements Closeable {
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 9;
+
+    /**
+     * Receives records in log order from {@link #replay(long, RecordHandler)}.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * @param type the record type given to {@link #append(byte, byte[])}
+         * @param payload the record payload, positioned at its start; only valid during the call
+         * @param endLsn the LSN just past the record
+         */
+        void accept(byte type, ByteBuffer payload, long endLsn) throws IOException;
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+
+    // guarded by this
+    private long segmentStart;
+    private MappedByteBuffer segment;
+    private int position;
+
+    private final Object syncLock = new Object();
+    private volatile long appendedLsn;
+    private volatile long durableLsn;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+
+    /**
+     * Opens the log in a directory, creating it if needed, and finds the end of the existing records.
+     *
+     * @param directory where the segment files live
+     * @param segmentBytes the size of each segment file; the largest record is a little smaller
+     * @param fsync whether {@link #awaitDurable(long)} forces the log to disk; when false, the operating
+     *        system writes it back on its own schedule
+     */
+    public SegmentedLog(Path directory, int segmentBytes, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        List<Long> starts = segmentStarts();
+        if (starts.isEmpty()) {
+            openSegment(0);
+        } else {
+            long last = starts.get(starts.size() - 1);
+            openSegment(last);
+            position = scanEnd(segment);
+            // zero anything after the end, such as the remains of a torn record
+            for (int i = position; i < segmentBytes; i++) {
+                if (segment.get(i) != 0) {
+                    segment.put(i, (byte) 0);
+                }
+            }
+            segment.force();
+        }
+        appendedLsn = segmentStart + position;
+        durableLsn = appendedLsn;
+    }
+
+    /**
+     * Appends a record. It is in the log when this returns, and on disk once {@link #awaitDurable(long)} is
+     * called with the returned LSN.
+     *
+     * @return the LSN just past the record
+     * @throws IllegalArgumentException if the record does not fit in a segment
+     */
+    public synchronized long append(byte type, byte[] payload) throws IOException {
+        int length = HEADER_BYTES + payload.length;
+        if (length > segmentBytes) {
+            throw new IllegalArgumentException("Record of " + length + " bytes exceeds the segment size");
+        }
+        if (position + length > segmentBytes) {
+            // the previous segment is made durable before it is left, so awaitDurable only forces the current one
+            segment.force();
+            openSegment(segmentStart + segmentBytes);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload);
+        segment.putInt(position + 4, (int) crc.getValue());
+        segment.put(position + 8, type);
+        segment.put(position + HEADER_BYTES, payload);
+        // the length goes in last, so a reader never sees a length whose record is not there yet
+        segment.putInt(position, length);
+        position += length;
+        records.increment();
+        appendedLsn = segmentStart + position;
+        return appendedLsn;
+    }
+
+    /**
+     * Waits until every record up to the LSN is on disk. Does nothing when fsync is off.
+     */
+    public void awaitDurable(long lsn) {
+        if (!fsync || lsn <= durableLsn) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (lsn <= durableLsn) {
+                return;
+            }
+            MappedByteBuffer current;
+            long start;
+            long target;
+            synchronized (this) {
+                current = segment;
+                start = segmentStart;
+                target = appendedLsn;
+            }
+            int from = (int) Math.max(0, durableLsn - start);
+            current.force(from, (int) (target - start) - from);
+            forces.increment();
+            durableLsn = target;
+        }
+    }
+
+    /**
+     * @return the LSN just past the last record appended
+     */
+    public long getAppendedLsn() {
+        return appendedLsn;
+    }
+
+    /**
+     * @return the start of the oldest segment on disk, which is past zero once segments have been deleted
+     */
+    public long getFirstLsn() throws IOException {
+        List<Long> starts = segmentStarts();
+        return starts.isEmpty() ? 0 : starts.get(0);
+    }
+
+    /**
+     * Passes every record from an LSN onwards to the handler, in order.
+     *
+     * @param fromLsn a record boundary, such as an LSN returned by {@link #append(byte, byte[])}
+     * @return the number of records replayed
+     */
+    public long replay(long fromLsn, RecordHandler handler) throws IOException {
+        long count = 0;
+        for (long start : segmentStarts()) {
+            if (start + segmentBytes <= fromLsn) {
+                continue;
+            }
+            ByteBuffer data = readSegment(start);
+            int offset = (int) Math.max(0, fromLsn - start);
+            int end = scanEnd(data);
+            while (offset < end) {
+                int length = data.getInt(offset);
+                byte type = data.get(offset + 8);
+                ByteBuffer payload = data.slice(offset + HEADER_BYTES, length - HEADER_BYTES);
+                offset += length;
+                handler.accept(type, payload, start + offset);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the segments that lie entirely before an LSN, once a snapshot makes them unnecessary.
+     *
+     * @return the number of segments deleted
+     */
+    public int deleteBefore(long lsn) throws IOException {
+        long current;
+        synchronized (this) {
+            current = segmentStart;
+        }
+        int deleted = 0;
+        for (long start : segmentStarts()) {
+            if (start + segmentBytes <= lsn && start < current) {
+                Files.deleteIfExists(segmentPath(start));
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the number of records appended since the log was opened
+     */
+    public long getRecordCount() {
+        return records.sum();
+    }
+
+    /**
+     * @return the number of times the log was forced to disk by {@link #awaitDurable(long)}
+     */
+    public long getForceCount() {
+        return forces.sum();
+    }
+
+    /**
+     * Forces the log to disk. The segment stays mapped until it is garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        segment.force();
+        durableLsn = appendedLsn;
+    }
+
+    private void openSegment(long start) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(start).toFile(), "rw")) {
+            file.setLength(segmentBytes);
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segmentStart = start;
+        position = 0;
+    }
+
+    private ByteBuffer readSegment(long start) throws IOException {
+        synchronized (this) {
+            if (start == segmentStart) {
+                return segment.duplicate();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(segmentPath(start))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @return the offset just past the last complete record with a valid CRC
+     */
+    private int scanEnd(ByteBuffer data) {
+        int offset = 0;
+        int limit = data.capacity();
+        CRC32C crc = new CRC32C();
+        while (offset + HEADER_BYTES <= limit) {
+            int length = data.getInt(offset);
+            if (length < HEADER_BYTES || offset + length > limit) {
+                break;
+            }
+            crc.reset();
+            crc.update(data.slice(offset + 8, length - 8));
+            if ((int) crc.getValue() != data.getInt(offset + 4)) {
+                break;
+            }
+            offset += length;
+        }
+        return offset;
+    }
+
+    private List<Long> segmentStarts() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        starts.sort(null);
+        return starts;
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, start, SUFFIX));
+    }
+}
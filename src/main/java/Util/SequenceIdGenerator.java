@@ -0,0 +1,109 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The SequenceIdGenerator class hands out IDs from a database sequence, reserving them in blocks so only
+ * one call in blockSize goes to the database. Threads take IDs from the current block with one atomic
+ * increment; a thread that finds the block used up reserves the next one while the others wait for it.
+ * The reservation does JDBC I/O, so it is guarded by a ReentrantLock rather than a monitor, which would pin
+ * a virtual thread to its carrier for the whole round trip.
+ *
+ * The sequence is shared with the column default, so rows inserted without an ID never collide with
+ * reserved ones. IDs left in a block when the process stops are never used.
+ */
+public class SequenceIdGenerator implements IdGenerator {
+    private static final Logger LOG = LoggerFactory.getLogger(SequenceIdGenerator.class);
+    private static final Block EMPTY = new Block(new int[0]);
+
+    private final ConnectionPool pool;
+    private final String sequence;
+    private final int blockSize;
+    private final ReentrantLock reserveLock = new ReentrantLock();
+    private volatile Block block = EMPTY;
+
+    private static final class Block {
+        final int[] ids;
+        final AtomicInteger next = new AtomicInteger();
+
+        Block(int[] ids) {
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * @param pool the pool of the database the sequence is in
+     * @param sequence the name of the sequence
+     * @param blockSize the number of IDs reserved per round trip
+     */
+    public SequenceIdGenerator(ConnectionPool pool, String sequence, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive, was " + blockSize);
+        }
+        this.pool = pool;
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public int nextId() throws SQLException {
+        while (true) {
+            Block current = block;
+            int index = current.next.getAndIncrement();
+            if (index < current.ids.length) {
+                return current.ids[index];
+            }
+            reserveLock.lock();
+            try {
+                if (block == current) {
+                    block = reserve();
+                }
+            } finally {
+                reserveLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Drops the reserved IDs, after the sequence was recreated, so the next ID comes from the sequence.
+     */
+    public void reset() {
+        reserveLock.lock();
+        try {
+            block = EMPTY;
+        } finally {
+            reserveLock.unlock();
+        }
+    }
+
+    private Block reserve() throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT NEXT VALUE FOR " + sequence + " FROM SYSTEM_RANGE(1, ?)")) {
+            statement.setInt(1, blockSize);
+            int[] ids = new int[blockSize];
+            try (ResultSet rs = statement.executeQuery()) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (!rs.next()) {
+                        throw new SQLException("Sequence " + sequence + " returned fewer values than requested");
+                    }
+                    ids[i] = Math.toIntExact(rs.getLong(1));
+                }
+            }
+            Arrays.sort(ids);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("op=reserveIds sequence={} first={} last={}", sequence, ids[0], ids[ids.length - 1]);
+            }
+            return new Block(ids);
+        }
+    }
+}
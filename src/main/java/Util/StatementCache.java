@@ -0,0 +1,106 @@
+package Util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The StatementCache class keeps the prepared statements of one physical connection, keyed by their SQL text,
+ * so that repeated calls for the same SQL skip the parse and plan step. The least recently used statement is
+ * closed once the cache is full.
+ *
+ * A statement is removed from the cache while it is in use and put back when the borrower closes it, so the
+ * same SQL prepared twice on one connection never shares a statement.
+ */
+class StatementCache {
+    private final int capacity;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param capacity the maximum number of statements kept open for the connection
+     * @param hits counter incremented when a statement is found in the cache
+     * @param misses counter incremented when a statement has to be prepared
+     */
+    StatementCache(int capacity, LongAdder hits, LongAdder misses) {
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.capacity) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache key for a statement. Statements that return generated keys are prepared differently,
+     * so the flag is part of the key.
+     */
+    static String key(String sql, int autoGeneratedKeys) {
+        return autoGeneratedKeys + ":" + sql;
+    }
+
+    /**
+     * Takes a statement out of the cache.
+     *
+     * @return the cached statement, or null if it has to be prepared
+     */
+    synchronized PreparedStatement take(String key) {
+        PreparedStatement statement = statements.remove(key);
+        if (statement != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return statement;
+    }
+
+    /**
+     * Puts a statement back after use. If the cache is disabled or another copy of the same SQL was put back
+     * first, the statement is closed instead.
+     */
+    synchronized void put(String key, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            return;
+        }
+        if (capacity <= 0 || statements.containsKey(key)) {
+            closeQuietly(statement);
+            return;
+        }
+        statements.put(key, statement);
+    }
+
+    /**
+     * Closes every cached statement, used when the physical connection is discarded.
+     */
+    synchronized void clear() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // the connection is going away or the statement is already unusable
+        }
+    }
+}
@@ -1,17 +1,30 @@
+drop table if exists follow;
 drop table if exists message;
 drop table if exists account;
+drop sequence if exists message_id_seq;
 create table account (
     account_id int primary key auto_increment,
     username varchar(255) unique,
     password varchar(255)
 );
+create sequence message_id_seq as int;
 create table message (
-    message_id int primary key auto_increment,
+    message_id int default next value for message_id_seq primary key,
     posted_by int,
     message_text varchar(255),
     time_posted_epoch bigint,
     foreign key (posted_by) references  account(account_id)
 );
+create index message_posted_by_idx on message (posted_by, message_id);
+create index message_time_posted_idx on message (time_posted_epoch, message_id);
+create table follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index follow_followee_idx on follow (followee_id, follower_id);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
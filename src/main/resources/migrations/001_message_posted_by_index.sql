@@ -0,0 +1,3 @@
+-- Lets getMessagesByUserId seek straight to one author's messages in message_id order
+-- instead of scanning the whole table.
+create index if not exists message_posted_by_idx on message (posted_by, message_id);
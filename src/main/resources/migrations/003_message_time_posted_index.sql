@@ -0,0 +1,3 @@
+-- Lets getMessagesByTimeRange scan just the requested time range, already in
+-- (time_posted_epoch, message_id) order, instead of scanning and sorting the whole table.
+create index if not exists message_time_posted_idx on message (time_posted_epoch, message_id);
@@ -0,0 +1,10 @@
+-- Message IDs come from message_id_seq, which the server reserves in blocks and assigns before
+-- inserting (see Util.SequenceIdGenerator), instead of the column's identity. The sequence is moved
+-- past every existing ID, and never backwards, so the script can run again.
+create sequence if not exists message_id_seq as int;
+alter table message alter column message_id drop identity;
+alter table message alter column message_id set default next value for message_id_seq;
+alter sequence message_id_seq restart with (
+    select greatest(coalesce(max(message_id), 0) + 1,
+        (select base_value from information_schema.sequences where sequence_name = 'MESSAGE_ID_SEQ'))
+    from message);
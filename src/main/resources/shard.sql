@@ -0,0 +1,9 @@
+create table if not exists message (
+    message_id int primary key,
+    posted_by int not null,
+    message_text varchar(255),
+    time_posted_epoch bigint
+);
+create index if not exists message_posted_by_idx on message (posted_by, message_id);
+create index if not exists message_time_posted_idx on message (time_posted_epoch, message_id);
+create sequence if not exists message_seq start with 1 maxvalue 33554431;
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Service.DatabaseExecutor;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Checks GET /messages with server.async=true, where the table is read a chunk at a time on the database
+ * executor.
+ */
+public class AsyncRetrieveAllMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, start the Javalin app in async mode, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("server.async", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("server.async");
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with more messages than fit in one chunk
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message, in message_id order
+     */
+    @Test
+    public void getAllMessagesAcrossChunks() throws IOException, InterruptedException {
+        for (int i = 0; i < 520; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"message " + i + "\", " +
+                            "\"time_posted_epoch\": 1669947800}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(521, messages.size());
+        Assert.assertEquals("test message 1", messages.get(0).getMessage_text());
+        for (int i = 1; i < messages.size(); i++) {
+            Assert.assertTrue(messages.get(i - 1).getMessage_id() < messages.get(i).getMessage_id());
+            Assert.assertEquals("message " + (i - 1), messages.get(i).getMessage_text());
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages while the database executor is saturated
+     *
+     * Expected Response:
+     *  Status Code: 503, with a Retry-After header
+     *  Response Body: empty, with no part of the array written
+     */
+    @Test
+    public void getAllMessagesOverloaded() throws IOException, InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // a rejection only means the executor stays full once every thread already runs one of the blocked
+            // tasks; before that, a thread finishing earlier work may still take one from the queue
+            DatabaseExecutor executor = DatabaseExecutor.shared();
+            AtomicInteger running = new AtomicInteger();
+            boolean full;
+            do {
+                boolean allRunning = running.get() == executor.getThreadCount();
+                CompletableFuture<Object> blocked = executor.supply(() -> {
+                    running.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                });
+                full = allRunning && blocked.isCompletedExceptionally();
+            } while (!full);
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            Assert.assertEquals(503, response.statusCode());
+            Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+            Assert.assertEquals("", response.body());
+        } finally {
+            release.countDown();
+        }
+    }
+}
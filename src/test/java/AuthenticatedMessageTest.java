@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AuthenticatedMessageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second account, testuser2, is registered.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser2\", " +
+                        "\"password\": \"password2\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private String login(String username, String password) throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"" + username + "\", " +
+                        "\"password\": \"" + password + "\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue("X-Auth-Token").orElseThrow();
+    }
+
+    /**
+     * Posting a message as account 1 with testuser2's token, then with a forged token
+     *
+     * Expected Response:
+     *  Status Code: 403 for the other account's token, 401 for the forged one
+     */
+    @Test
+    public void createMessageAsAnotherAccountIsForbidden() throws IOException, InterruptedException {
+        String token = login("testuser2", "password2");
+        for (String authorization : new String[] {"Bearer " + token, "Bearer forged.token"}) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{" +
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"hello message\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", authorization)
+                    .build();
+            HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(authorization.equals("Bearer " + token) ? 403 : 401, response.statusCode());
+        }
+    }
+
+    /**
+     * Deleting message 1 with testuser2's token, then with testuser1's token
+     *
+     * Expected Response:
+     *  testuser2: Status Code 200 with an empty body, and the message is left in place
+     *  testuser1: Status Code 200 with the deleted message
+     */
+    @Test
+    public void deleteOnlyOwnMessage() throws IOException, InterruptedException {
+        HttpRequest otherDelete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .header("Authorization", "Bearer " + login("testuser2", "password2"))
+                .build();
+        HttpResponse<String> otherResponse = webClient.send(otherDelete, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, otherResponse.statusCode());
+        Assert.assertEquals("", otherResponse.body());
+
+        HttpRequest ownDelete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .header("Authorization", "Bearer " + login("testuser1", "password"))
+                .build();
+        HttpResponse<String> ownResponse = webClient.send(ownDelete, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, ownResponse.statusCode());
+        Message expectedResult = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(ownResponse.body(), Message.class));
+    }
+}
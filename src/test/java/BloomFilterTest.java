@@ -0,0 +1,39 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+
+    /**
+     * Every added string is reported as possibly present.
+     */
+    @Test
+    public void addedStringsAreNeverMissed() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    /**
+     * At its expected size the filter's false-positive rate stays near the configured one.
+     */
+    @Test
+    public void falsePositiveRateIsNearConfigured() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+}
@@ -0,0 +1,100 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, build a small pool over a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 1, 2, 200, 60_000, 60_000);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closing a borrowed connection returns it to the pool rather than closing the physical connection.
+     */
+    @Test
+    public void closeReturnsConnectionToPool() throws SQLException {
+        Connection connection = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getTotalCount());
+    }
+
+    /**
+     * Borrowing beyond the maximum size times out instead of opening another connection.
+     */
+    @Test
+    public void borrowBeyondMaxSizeTimesOut() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("Expected the third borrow to time out");
+        } catch (SQLException e) {
+            Assert.assertEquals(1, pool.getTimeoutCount());
+        }
+        Assert.assertEquals(2, pool.getTotalCount());
+        first.close();
+        second.close();
+    }
+
+    /**
+     * Closing a stale reference twice must not hand back a connection lent to someone else.
+     */
+    @Test
+    public void doubleCloseDoesNotReleaseOtherBorrower() throws SQLException {
+        Connection stale = pool.getConnection();
+        stale.close();
+        Connection current = pool.getConnection();
+        stale.close();
+
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertFalse(current.isClosed());
+        current.close();
+    }
+
+    /**
+     * Preparing the same SQL again on a returned connection is served from the statement cache.
+     */
+    @Test
+    public void preparedStatementIsReusedAcrossBorrows() throws SQLException {
+        for (int i = 0; i < 3; i++) {
+            Connection connection = pool.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement("SELECT ? + 1");
+            preparedStatement.setInt(1, i);
+            ResultSet rs = preparedStatement.executeQuery();
+            Assert.assertTrue(rs.next());
+            Assert.assertEquals(i + 1, rs.getInt(1));
+            connection.close();
+        }
+        Assert.assertEquals(1, pool.getStatementCacheMisses());
+        Assert.assertEquals(2, pool.getStatementCacheHits());
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Service.DatabaseExecutor;
+
+public class DatabaseExecutorTest {
+    DatabaseExecutor executor;
+
+    /**
+     * Before every test, build an executor with one thread and room for one queued task.
+     */
+    @Before
+    public void setUp() {
+        executor = new DatabaseExecutor(1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Work submitted while the thread is busy and the queue is full fails fast instead of waiting.
+     */
+    @Test
+    public void fullQueueRejectsWork() throws InterruptedException, ExecutionException {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> running = executor.supply(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        while (executor.getActiveCount() == 0) {
+            Thread.sleep(1);
+        }
+        CompletableFuture<Integer> queued = executor.supply(() -> 2);
+        CompletableFuture<Integer> rejected = executor.supply(() -> 3);
+
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.join();
+            Assert.fail("Expected the third task to be rejected");
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, executor.getRejectedCount());
+
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(1), running.get());
+        Assert.assertEquals(Integer.valueOf(2), queued.get());
+    }
+}
@@ -0,0 +1,73 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.ExpiringCache;
+
+public class ExpiringCacheTest {
+
+    /**
+     * A miss calls the loader once; the next lookup is served from the cache.
+     */
+    @Test
+    public void loadedValueIsCached() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(10, 60_000);
+        Assert.assertEquals("one", cache.get(1, id -> "one"));
+        Assert.assertEquals("one", cache.get(1, id -> "other"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * A value loaded while a write to the cache happened is returned but not stored.
+     */
+    @Test
+    public void loadRacingWithWriteIsNotStored() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(10, 60_000);
+        String loaded = cache.get(1, id -> {
+            cache.invalidate(id);
+            return "stale";
+        });
+        Assert.assertEquals("stale", loaded);
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+
+    /**
+     * A write to another key while a value is loading does not stop it from being stored.
+     */
+    @Test
+    public void loadRacingWithWriteToOtherKeyIsStored() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(10, 60_000);
+        cache.get(1, id -> {
+            cache.invalidate(2);
+            cache.put(3, "three");
+            return "one";
+        });
+        Assert.assertEquals("one", cache.getIfPresent(1));
+    }
+
+    /**
+     * The least recently used entry is evicted once the cache is full.
+     */
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(2, 60_000);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.getIfPresent(1);
+        cache.put(3, "three");
+        Assert.assertNull(cache.getIfPresent(2));
+        Assert.assertEquals("one", cache.getIfPresent(1));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    /**
+     * Entries older than the TTL are treated as absent.
+     */
+    @Test
+    public void expiredEntryIsAbsent() throws InterruptedException {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(10, 20);
+        cache.put(1, "one");
+        Thread.sleep(50);
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+}
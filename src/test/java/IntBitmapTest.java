@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntBitmap;
+
+public class IntBitmapTest {
+
+    /**
+     * Added values are found, others are not, and size counts each value once.
+     */
+    @Test
+    public void addAndContains() {
+        IntBitmap bitmap = new IntBitmap();
+        Assert.assertTrue(bitmap.add(0));
+        Assert.assertTrue(bitmap.add(65_537));
+        Assert.assertTrue(bitmap.add(Integer.MAX_VALUE));
+        Assert.assertFalse(bitmap.add(65_537));
+        Assert.assertTrue(bitmap.contains(0));
+        Assert.assertTrue(bitmap.contains(65_537));
+        Assert.assertTrue(bitmap.contains(Integer.MAX_VALUE));
+        Assert.assertFalse(bitmap.contains(1));
+        Assert.assertFalse(bitmap.contains(-1));
+        Assert.assertEquals(3, bitmap.size());
+    }
+
+    /**
+     * Values added from many threads at once are all kept, and dense ids cost about one bit each.
+     */
+    @Test
+    public void concurrentAddsAreAllKept() throws InterruptedException {
+        IntBitmap bitmap = new IntBitmap();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int i = offset; i < 1_000_000; i += 8) {
+                    bitmap.add(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(1_000_000, bitmap.size());
+        for (int i = 0; i < 1_000_000; i++) {
+            Assert.assertTrue(bitmap.contains(i));
+        }
+        Assert.assertTrue(bitmap.getAllocatedBytes() <= 16 * 8192);
+    }
+}
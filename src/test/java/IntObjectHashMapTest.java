@@ -0,0 +1,42 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntObjectHashMap;
+
+public class IntObjectHashMapTest {
+    /**
+     * A random mix of puts and removes leaves the map holding what a HashMap holds.
+     */
+    @Test
+    public void matchesHashMap() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>(4);
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // a small key range forces long probe runs and many removals from the middle of them
+            int key = random.nextInt(2_000) - 1_000;
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+            } else {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (int key = -1_000; key < 1_000; key++) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+        Assert.assertEquals(expected.size(), map.keys().length);
+    }
+
+    /**
+     * Null values are rejected, since null marks an empty slot.
+     */
+    @Test(expected = NullPointerException.class)
+    public void rejectsNullValues() {
+        new IntObjectHashMap<String>().put(1, null);
+    }
+}
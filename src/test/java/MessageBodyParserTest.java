@@ -0,0 +1,64 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import Model.Message;
+import Util.MessageBodyParser;
+
+public class MessageBodyParserTest {
+    MessageBodyParser parser = new MessageBodyParser(new JsonFactory(), 1024);
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The message fields are read and unknown fields, including nested ones, are skipped.
+     */
+    @Test
+    public void readsMessageFields() throws IOException {
+        Message message = parser.parse(body("{\"posted_by\":1, \"extra\": {\"a\": [1, 2]}, " +
+                "\"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}"), -1);
+        Assert.assertEquals(new Message(0, 1, "hello", 1669947792), message);
+    }
+
+    /**
+     * A message_text over 255 characters is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLongText() throws IOException {
+        parser.parse(body("{\"message_text\": \"" + "a".repeat(256) + "\"}"), -1);
+    }
+
+    /**
+     * Malformed JSON is rejected as invalid input.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMalformedBody() throws IOException {
+        parser.parse(body("{\"message_text\": "), -1);
+    }
+
+    /**
+     * A body over the limit is rejected both by its declared length and, without one, while reading.
+     */
+    @Test
+    public void rejectsOversizedBody() throws IOException {
+        String large = "{\"padding\": \"" + "a".repeat(2048) + "\", \"message_text\": \"hi\"}";
+        try {
+            parser.parse(body("{}"), 2048);
+            Assert.fail("declared length over the limit was accepted");
+        } catch (MessageBodyParser.BodyTooLargeException expected) {
+        }
+        try {
+            parser.parse(body(large), -1);
+            Assert.fail("body over the limit was accepted");
+        } catch (MessageBodyParser.BodyTooLargeException expected) {
+        }
+    }
+}
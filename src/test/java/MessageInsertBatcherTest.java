@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.DatabaseExecutor;
+import Service.MessageInsertBatcher;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+public class MessageInsertBatcherTest {
+    MessageInsertBatcher batcher;
+
+    /**
+     * Before every test, reset the database and start a batcher that waits long enough to group every insert.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        batcher = new MessageInsertBatcher(new MessageDAO(), 16, 50);
+    }
+
+    @After
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    /**
+     * Concurrently submitted messages are written together and each caller gets its own message_id.
+     */
+    @Test
+    public void concurrentInsertsShareABatch() {
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(batcher.submit(new Message(1, "batched " + i, 1669947792)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            Message inserted = results.get(i).join();
+            Assert.assertNotNull(inserted);
+            Assert.assertEquals("batched " + i, inserted.getMessage_text());
+            ids.add(inserted.getMessage_id());
+        }
+        Assert.assertEquals(5, ids.size());
+        Assert.assertEquals(1, batcher.getBatchCount());
+    }
+
+    /**
+     * A message with an unknown poster fails on its own without failing the rest of its batch.
+     */
+    @Test
+    public void failedRowDoesNotFailBatch() {
+        CompletableFuture<Message> good = batcher.submit(new Message(1, "good", 1669947792));
+        CompletableFuture<Message> bad = batcher.submit(new Message(999, "bad", 1669947792));
+
+        Assert.assertNotNull(good.join());
+        Assert.assertNull(bad.join());
+    }
+
+    /**
+     * Messages submitted while the batcher shuts down are all written, whether the writer thread takes them
+     * or not.
+     */
+    @Test
+    public void submitDuringShutdownCompletes() throws Exception {
+        List<CompletableFuture<Message>> results = new ArrayList<>();
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                results.add(batcher.submit(new Message(1, "racing " + i, 1669947792)));
+            }
+        });
+        submitter.start();
+        batcher.shutdown();
+        submitter.join();
+
+        for (CompletableFuture<Message> result : results) {
+            Assert.assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * An asynchronous create waits on the batch without holding a database thread, so it completes while every
+     * one of them is busy.
+     */
+    @Test
+    public void asyncCreateDoesNotHoldDatabaseThread() throws Exception {
+        MessageService messageService = new MessageService(new MessageDAO(), batcher);
+        DatabaseExecutor executor = DatabaseExecutor.shared();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        try {
+            for (int i = 0; i < executor.getThreadCount(); i++) {
+                executor.supply(() -> {
+                    running.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                });
+            }
+            while (running.get() < executor.getThreadCount()) {
+                Thread.sleep(10);
+            }
+
+            Message created = messageService.createMessageAsync(new Message(1, "batched while busy", 1669947792))
+                    .get(5, TimeUnit.SECONDS);
+            Assert.assertEquals("batched while busy", created.getMessage_text());
+            Assert.assertTrue(messageService.getSearchIndex().contains(created.getMessage_id()));
+        } finally {
+            release.countDown();
+        }
+    }
+}
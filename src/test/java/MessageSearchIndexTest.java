@@ -0,0 +1,47 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.MessageSearchIndex;
+
+public class MessageSearchIndexTest {
+
+    /**
+     * Text is split on anything but letters and digits, and lower-cased.
+     */
+    @Test
+    public void tokenizeSplitsAndLowerCases() {
+        Assert.assertEquals(List.of("hello", "world", "42"), MessageSearchIndex.tokenize("Hello, WORLD! 42"));
+    }
+
+    /**
+     * Only messages with every query term match, and the one using a term more often ranks first.
+     */
+    @Test
+    public void searchMatchesAllTermsAndRanks() {
+        MessageSearchIndex index = new MessageSearchIndex(1000);
+        index.put(1, "coffee in the morning");
+        index.put(2, "coffee coffee coffee morning");
+        index.put(3, "tea in the morning");
+        Assert.assertArrayEquals(new int[] {2, 1}, index.search("morning coffee", 0, 10));
+        Assert.assertArrayEquals(new int[] {1}, index.search("morning coffee", 1, 10));
+        Assert.assertArrayEquals(new int[] {}, index.search("coffee tea", 0, 10));
+        Assert.assertArrayEquals(new int[] {}, index.search("  ", 0, 10));
+    }
+
+    /**
+     * Updating a message replaces its terms, and removing it drops it from results.
+     */
+    @Test
+    public void updatesAndRemovalsAreReflected() {
+        MessageSearchIndex index = new MessageSearchIndex(1000);
+        index.put(1, "first draft");
+        index.put(1, "final text");
+        Assert.assertArrayEquals(new int[] {}, index.search("draft", 0, 10));
+        Assert.assertArrayEquals(new int[] {1}, index.search("final", 0, 10));
+        index.remove(1);
+        Assert.assertArrayEquals(new int[] {}, index.search("final", 0, 10));
+        Assert.assertEquals(0, index.size());
+    }
+}
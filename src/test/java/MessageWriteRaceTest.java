@@ -0,0 +1,99 @@
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryAccountStore;
+import DAO.InMemoryFollowStore;
+import DAO.InMemoryMessageStore;
+import Model.Account;
+import Model.Message;
+import Service.MessageService;
+
+/**
+ * Checks that a write racing another write to the same message cannot leave stale data in the message cache or
+ * the search index. The racing write is started on another thread from inside the store's update, right after
+ * the update commits, and has to wait until the update's cache and index work is done.
+ */
+public class MessageWriteRaceTest {
+    AtomicReference<Runnable> afterUpdate = new AtomicReference<>();
+    AtomicReference<IntConsumer> afterInsert = new AtomicReference<>();
+    Thread racingThread;
+    MessageService messageService;
+    int messageId;
+
+    @Before
+    public void setUp() {
+        InMemoryAccountStore accounts = new InMemoryAccountStore();
+        accounts.insertAccount(new Account("testuser1", "password"));
+        InMemoryMessageStore store = new InMemoryMessageStore(accounts, 4) {
+            @Override
+            public Message insertMessage(Message message) {
+                Message inserted = super.insertMessage(message);
+                IntConsumer racing = afterInsert.getAndSet(null);
+                if (racing != null) {
+                    racing.accept(inserted.getMessage_id());
+                }
+                return inserted;
+            }
+
+            @Override
+            public Message updateMessageText(int messageId, String newText) {
+                Message updated = super.updateMessageText(messageId, newText);
+                Runnable racing = afterUpdate.getAndSet(null);
+                if (racing != null) {
+                    racingThread = new Thread(racing);
+                    racingThread.start();
+                }
+                return updated;
+            }
+        };
+        messageService = new MessageService(store, new InMemoryFollowStore(accounts), null);
+        messageId = messageService.createMessage(new Message(1, "original words", 1669947800L)).getMessage_id();
+        messageService.getMessageById(messageId);
+    }
+
+    /**
+     * A delete that commits after an update is not undone by the update.
+     */
+    @Test
+    public void deleteAfterUpdateWins() throws InterruptedException {
+        afterUpdate.set(() -> messageService.deleteMessage(messageId));
+        messageService.updateMessageText(messageId, "edited words");
+        racingThread.join();
+
+        Assert.assertEquals(Optional.empty(), messageService.getMessageById(messageId));
+        Assert.assertTrue(messageService.searchMessages("edited", 0, 10).isEmpty());
+        Assert.assertTrue(messageService.getMessageCache().size() == 0);
+    }
+
+    /**
+     * Of two racing updates, the one that committed last is what reads and searches see.
+     */
+    @Test
+    public void laterUpdateWins() throws InterruptedException {
+        afterUpdate.set(() -> messageService.updateMessageText(messageId, "newer words"));
+        messageService.updateMessageText(messageId, "older words");
+        racingThread.join();
+
+        Assert.assertEquals("newer words", messageService.getMessageById(messageId).get().getMessage_text());
+        Assert.assertTrue(messageService.searchMessages("older", 0, 10).isEmpty());
+        Assert.assertEquals(1, messageService.searchMessages("newer", 0, 10).size());
+    }
+
+    /**
+     * A new message deleted before its creator indexed it is never indexed.
+     */
+    @Test
+    public void deleteBeforeCreateIsIndexedWins() {
+        afterInsert.set(id -> Assert.assertTrue(messageService.deleteMessage(id)));
+        Message created = messageService.createMessage(new Message(1, "fleeting words", 1669947801L));
+
+        Assert.assertEquals(Optional.empty(), messageService.getMessageById(created.getMessage_id()));
+        Assert.assertTrue(messageService.searchMessages("fleeting", 0, 10).isEmpty());
+        Assert.assertFalse(messageService.getSearchIndex().contains(created.getMessage_id()));
+    }
+}
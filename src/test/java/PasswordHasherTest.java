@@ -0,0 +1,62 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.PasswordHasher;
+
+public class PasswordHasherTest {
+    PasswordHasher hasher = new PasswordHasher("PBKDF2WithHmacSHA256", 1_000, 2, 16, 100, 60_000);
+
+    @After
+    public void tearDown() {
+        hasher.shutdown();
+    }
+
+    /**
+     * A hash verifies against the password it was made from and no other, and is salted.
+     */
+    @Test
+    public void hashVerifiesOnlyItsPassword() {
+        String stored = hasher.hash("password");
+        Assert.assertNotEquals("password", stored);
+        Assert.assertNotEquals(stored, hasher.hash("password"));
+        Assert.assertEquals(PasswordHasher.Verification.VALID, hasher.verify("password", stored));
+        Assert.assertEquals(PasswordHasher.Verification.FAILED, hasher.verify("passw0rd", stored));
+    }
+
+    /**
+     * A second successful verification is answered by the cache, and a wrong password is not.
+     */
+    @Test
+    public void repeatedVerificationIsCached() {
+        String stored = hasher.hash("password");
+        hasher.verify("password", stored);
+        Assert.assertEquals(PasswordHasher.Verification.VALID, hasher.verify("password", stored));
+        Assert.assertEquals(1, hasher.getVerifiedCache().getHitCount());
+        Assert.assertEquals(PasswordHasher.Verification.FAILED, hasher.verify("wrong", stored));
+    }
+
+    /**
+     * Legacy plaintext values still verify, but are flagged for rehashing.
+     */
+    @Test
+    public void plaintextNeedsRehash() {
+        Assert.assertEquals(PasswordHasher.Verification.VALID_NEEDS_REHASH, hasher.verify("password", "password"));
+        Assert.assertEquals(PasswordHasher.Verification.FAILED, hasher.verify("password", "other"));
+    }
+
+    /**
+     * A hash made with a different work factor verifies, but is flagged for rehashing; a malformed value fails.
+     */
+    @Test
+    public void oldWorkFactorNeedsRehash() {
+        PasswordHasher weaker = new PasswordHasher("PBKDF2WithHmacSHA256", 500, 1, 16, 0, 0);
+        try {
+            String stored = weaker.hash("password");
+            Assert.assertEquals(PasswordHasher.Verification.VALID_NEEDS_REHASH, hasher.verify("password", stored));
+        } finally {
+            weaker.shutdown();
+        }
+        Assert.assertEquals(PasswordHasher.Verification.FAILED, hasher.verify("password", "$pbkdf2$broken"));
+    }
+}
@@ -0,0 +1,144 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.ReadConsistency;
+import Util.ReadReplicas;
+
+/**
+ * Ships changes from the test database to an in-memory reader database.
+ */
+public class ReadReplicasTest {
+    ConnectionPool reader;
+    ReadReplicas replicas;
+
+    /**
+     * Before every test, reset the database and copy it to a new, empty reader.
+     */
+    @Before
+    public void setUp() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        JdbcDataSource source = new JdbcDataSource();
+        source.setURL("jdbc:h2:mem:replica-test;DB_CLOSE_DELAY=-1");
+        source.setUser("sa");
+        source.setPassword("sa");
+        reader = new ConnectionPool(source, 1, 2, 1_000, 60_000, 30_000);
+        replicas = new ReadReplicas(ConnectionUtil.getPool(), List.of(reader));
+        replicas.resync();
+    }
+
+    @After
+    public void tearDown() {
+        reader.shutdown();
+    }
+
+    /**
+     * Inserts, updates and deletes reach the reader, for single and composite keys.
+     */
+    @Test
+    public void copiesChangedRows() throws Exception {
+        Assert.assertEquals("test message 1", readerText(1));
+
+        writer("insert into message (posted_by, message_text, time_posted_epoch) values (1, 'second', 1669947800)");
+        ship(replicas.changed("message", 2));
+        Assert.assertEquals("second", readerText(2));
+
+        writer("update message set message_text = 'edited' where message_id = 2");
+        writer("delete from message where message_id = 1");
+        replicas.changed("message", 2);
+        ship(replicas.changed("message", 1));
+        Assert.assertEquals("edited", readerText(2));
+        Assert.assertNull(readerText(1));
+
+        writer("insert into follow (follower_id, followee_id) values (1, 1)");
+        ship(replicas.changed("follow", 1, 1));
+        Assert.assertEquals(1, readerCount("follow"));
+        writer("delete from follow");
+        ship(replicas.changed("follow", 1, 1));
+        Assert.assertEquals(0, readerCount("follow"));
+    }
+
+    /**
+     * A session is served by the reader only once it has applied the session's writes.
+     */
+    @Test
+    public void routesByVersion() throws Exception {
+        try (Connection connection = replicas.getConnection(null)) {
+            Assert.assertNotNull(connection);
+        }
+        long unshipped = replicas.getShippedVersion() + 1;
+        Assert.assertNull(replicas.getConnection(new ReadConsistency(unshipped)));
+
+        ReadConsistency session = new ReadConsistency(0);
+        session.wrote(replicas.changed("message", 1));
+        ship(session.getReadAfter());
+        try (Connection connection = replicas.getConnection(session)) {
+            Assert.assertNotNull(connection);
+        }
+        Assert.assertEquals(session.getReadAfter(),
+                ReadConsistency.decode(ReadConsistency.encode(replicas.getEpoch(), session.getReadAfter()), replicas.getEpoch()));
+        Assert.assertEquals(0, ReadConsistency.decode(ReadConsistency.encode(replicas.getEpoch() + 1, 5), replicas.getEpoch()));
+    }
+
+    /**
+     * A reader that cannot apply a batch stops serving reads, and is copied again by the shipper without
+     * anyone calling resync.
+     */
+    @Test
+    public void failedReaderIsResynchronized() throws Exception {
+        try (Connection connection = reader.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table follow");
+        }
+        writer("insert into follow (follower_id, followee_id) values (1, 1)");
+        long version = replicas.changed("follow", 1, 1);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!(replicas.isHealthy(0) && replicas.getAppliedVersion(0) >= version) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(replicas.isHealthy(0));
+        Assert.assertEquals(1, readerCount("follow"));
+    }
+
+    private void ship(long version) throws InterruptedException {
+        Assert.assertTrue(replicas.awaitApplied(version, 5, TimeUnit.SECONDS));
+    }
+
+    private static void writer(String sql) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private String readerText(int messageId) throws SQLException {
+        try (Connection connection = reader.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select message_text from message where message_id = ?")) {
+            statement.setInt(1, messageId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private int readerCount(String table) throws SQLException {
+        try (Connection connection = reader.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select count(*) from " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Runs only when db.readerUrls names reader databases, as in the read-replica-test surefire execution.
+ */
+public class ReadYourWritesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a webClient that keeps
+     * cookies, as a browser session does.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        Assume.assumeNotNull(ConnectionUtil.getReadReplicas());
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newBuilder().cookieHandler(new CookieManager()).build();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null) {
+            app.stop();
+        }
+    }
+
+    /**
+     * Each write is visible to the session's next read, which the readers serve once they have it.
+     */
+    @Test
+    public void sessionSeesItsWrites() throws IOException, InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            HttpResponse<String> created = send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                            "\"message_text\": \"post " + i + "\", \"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build());
+            Assert.assertEquals(200, created.statusCode());
+            Assert.assertTrue(created.headers().firstValue("Set-Cookie").orElse("").startsWith("read-after="));
+            Message message = objectMapper.readValue(created.body(), Message.class);
+
+            Assert.assertTrue(messagesOfAccount1().contains(message));
+
+            send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/" + message.getMessage_id()))
+                    .DELETE()
+                    .build());
+            Assert.assertFalse(messagesOfAccount1().contains(message));
+        }
+    }
+
+    private List<Message> messagesOfAccount1() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -4,13 +4,14 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -99,15 +100,39 @@ public class RetrieveAllMessagesTest {
 
 
 
-    private void removeInitialMessage(){
+    /**
+     * Sending an http request to GET localhost:8080/messages when the message table cannot be read
+     * 
+     * Expected Response:
+     *  The connection is dropped, rather than a 200 with an empty or partial list
+     */
+    @Test
+    public void getAllMessagesReadFailureAbortsResponse() throws IOException, InterruptedException, SQLException {
+        Assume.assumeFalse("memory".equals(System.getProperty("storage.engine")));
+        try (Connection connection = ConnectionUtil.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table message");
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
         try {
-                Connection conn = ConnectionUtil.getConnection();
-                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?");
-                ps.setInt(1, 1);
-                ps.executeUpdate();
-        } catch (SQLException e) {
-                e.printStackTrace();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.fail("expected the response to be aborted, got " + response.statusCode() + " " + response.body());
+        } catch (IOException expected) {
+            // the server dropped the connection
         }
     }
 
+    /**
+     * Deletes message 1 through the API, so it is gone whichever storage engine serves the app.
+     */
+    private void removeInitialMessage() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
 }
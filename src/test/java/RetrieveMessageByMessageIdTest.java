@@ -3,9 +3,14 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -87,4 +92,33 @@ public class RetrieveMessageByMessageIdTest {
     }
 
 
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 while every pooled connection is borrowed
+     *
+     * Expected Response:
+     *  Status Code: 503, with a Retry-After header, once the pool's acquire timeout passes
+     */
+    @Test
+    public void getMessageWhilePoolExhausted() throws IOException, InterruptedException, SQLException {
+        // the memory engine does not read the database
+        Assume.assumeFalse("memory".equals(System.getProperty("storage.engine")));
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = 0; i < Integer.getInteger("db.pool.maxSize", 10); i++) {
+                borrowed.add(ConnectionUtil.getPool().getConnection());
+            }
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1"))
+                    .build();
+            HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            Assert.assertEquals(503, response.statusCode());
+            Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+        } finally {
+            for (Connection connection : borrowed) {
+                connection.close();
+            }
+        }
+    }
 }
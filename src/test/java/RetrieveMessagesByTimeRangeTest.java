@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesByTimeRangeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Messages 2 to 4 are posted at 1669947800, 1669947800 and 1669947900,
+     * after the seeded message 1 at 1669947792.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (long time : new long[] {1669947800L, 1669947800L, 1669947900L}) {
+            post("{\"posted_by\":1, \"message_text\": \"posted at " + time + "\", \"time_posted_epoch\": " + time + "}");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?" + query))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Walking GET localhost:8080/messages?since=1669947800&until=1669947900&limit=1 with the returned cursor
+     *
+     * Expected Response:
+     *  First page: message 2, with an X-Next-Cursor header
+     *  Second page: message 3, with no X-Next-Cursor header; message 4 is at until and excluded
+     */
+    @Test
+    public void getMessagesByTimeRangePageByPage() throws IOException, InterruptedException {
+        HttpResponse<String> firstResponse = get("since=1669947800&until=1669947900&limit=1");
+        Assert.assertEquals(200, firstResponse.statusCode());
+        List<Message> firstPage = objectMapper.readValue(firstResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, firstPage.size());
+        Assert.assertEquals(new Message(2, 1, "posted at 1669947800", 1669947800L), firstPage.get(0));
+        String cursor = firstResponse.headers().firstValue("X-Next-Cursor").orElse(null);
+        Assert.assertNotNull(cursor);
+
+        HttpResponse<String> secondResponse = get("since=1669947800&until=1669947900&limit=1&after=" + cursor);
+        Assert.assertEquals(200, secondResponse.statusCode());
+        List<Message> secondPage = objectMapper.readValue(secondResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, secondPage.size());
+        Assert.assertEquals(3, secondPage.get(0).getMessage_id());
+        Assert.assertFalse(secondResponse.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Posting a message without time_posted_epoch, then GET localhost:8080/messages?since=<now>
+     *
+     * Expected Response:
+     *  The message is stored with the server's time and is the only one returned
+     */
+    @Test
+    public void messageWithoutTimeIsStampedByServer() throws IOException, InterruptedException {
+        long before = Instant.now().getEpochSecond();
+        HttpResponse<String> postResponse = post("{\"posted_by\":1, \"message_text\": \"no time given\"}");
+        Assert.assertEquals(200, postResponse.statusCode());
+        Message created = objectMapper.readValue(postResponse.body(), Message.class);
+        Assert.assertTrue(created.getTime_posted_epoch() >= before);
+
+        HttpResponse<String> response = get("since=" + before);
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(created), messages);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with a non-numeric since, and with since after until
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesByTimeRangeInvalid() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("since=yesterday").statusCode());
+        Assert.assertEquals(400, get("since=2&until=1").statusCode());
+    }
+}
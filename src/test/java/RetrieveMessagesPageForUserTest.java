@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageForUserTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Two more messages are posted for account 1, so it owns messages 1-3.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        for (int i = 2; i <= 3; i++) {
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"test message " + i + "\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Walking GET localhost:8080/accounts/1/messages?limit=2 with the returned cursor
+     *
+     * Expected Response:
+     *  First page: messages 1 and 2, with an X-Next-Cursor header
+     *  Second page: message 3, with no X-Next-Cursor header
+     */
+    @Test
+    public void getMessagesFromUserPageByPage() throws IOException, InterruptedException {
+        HttpRequest firstRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=2"))
+                .build();
+        HttpResponse<String> firstResponse = webClient.send(firstRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, firstResponse.statusCode());
+
+        List<Message> firstPage = objectMapper.readValue(firstResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(2, firstPage.size());
+        Assert.assertEquals(1, firstPage.get(0).getMessage_id());
+        Assert.assertEquals(2, firstPage.get(1).getMessage_id());
+        String cursor = firstResponse.headers().firstValue("X-Next-Cursor").orElse(null);
+        Assert.assertNotNull(cursor);
+
+        HttpRequest secondRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?limit=2&after=" + cursor))
+                .build();
+        HttpResponse<String> secondResponse = webClient.send(secondRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, secondResponse.statusCode());
+
+        List<Message> secondPage = objectMapper.readValue(secondResponse.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(1, secondPage.size());
+        Assert.assertEquals(new Message(3, 1, "test message 3", 1669947792L), secondPage.get(0));
+        Assert.assertFalse(secondResponse.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with a malformed cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesFromUserInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages?after=not-a-cursor"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
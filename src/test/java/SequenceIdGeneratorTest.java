@@ -0,0 +1,117 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.SequenceIdGenerator;
+
+/**
+ * Checks that message IDs assigned before the insert are unique, increase in the order they are handed out,
+ * and share the sequence with rows inserted without an ID.
+ */
+public class SequenceIdGeneratorTest {
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        pool = ConnectionUtil.openPool("jdbc:h2:mem:id-test;DB_CLOSE_DELAY=-1");
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+            statement.execute("CREATE SEQUENCE id_seq AS INT");
+            statement.execute("CREATE TABLE row_id (id INT DEFAULT NEXT VALUE FOR id_seq PRIMARY KEY)");
+        }
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Eight threads sharing a generator get distinct IDs, each thread's in increasing order, and two
+     * generators on one sequence never hand out the same ID.
+     */
+    @Test
+    public void concurrentIdsAreUniqueAndIncreasing() throws Exception {
+        SequenceIdGenerator first = new SequenceIdGenerator(pool, "id_seq", 7);
+        SequenceIdGenerator second = new SequenceIdGenerator(pool, "id_seq", 7);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                SequenceIdGenerator generator = t % 2 == 0 ? first : second;
+                Callable<List<Integer>> task = () -> {
+                    List<Integer> ids = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        ids.add(generator.nextId());
+                    }
+                    return ids;
+                };
+                results.add(executor.submit(task));
+            }
+            Set<Integer> all = new HashSet<>();
+            for (Future<List<Integer>> result : results) {
+                List<Integer> ids = result.get();
+                for (int i = 1; i < ids.size(); i++) {
+                    Assert.assertTrue(ids.get(i) > ids.get(i - 1));
+                }
+                all.addAll(ids);
+            }
+            Assert.assertEquals(4000, all.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A row inserted without an ID takes the next sequence value, past the reserved block.
+     */
+    @Test
+    public void columnDefaultSkipsReservedIds() throws SQLException {
+        SequenceIdGenerator generator = new SequenceIdGenerator(pool, "id_seq", 10);
+        Assert.assertEquals(1, generator.nextId());
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO row_id VALUES (DEFAULT)");
+            var rs = statement.executeQuery("SELECT id FROM row_id");
+            rs.next();
+            Assert.assertEquals(11, rs.getInt(1));
+        }
+        Assert.assertEquals(2, generator.nextId());
+    }
+
+    /**
+     * MessageDAO batches keep the IDs they assigned when a bad row sends them back to single inserts, and
+     * the IDs follow the order of the input.
+     */
+    @Test
+    public void batchFallbackKeepsAssignedIds() {
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> batch = new ArrayList<>();
+        batch.add(new Message(1, "first", 1669947800L));
+        batch.add(new Message(99, "unknown poster", 1669947801L));
+        batch.add(new Message(1, "third", 1669947802L));
+        List<Message> inserted = messageDAO.insertMessages(batch);
+        Assert.assertNull(inserted.get(1));
+        Assert.assertEquals(2, inserted.get(0).getMessage_id());
+        Assert.assertEquals(4, inserted.get(2).getMessage_id());
+        Assert.assertEquals(inserted.get(2), messageDAO.getMessageById(4).orElse(null));
+        Assert.assertEquals(5, messageDAO.insertMessage(new Message(1, "after", 1669947803L)).getMessage_id());
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.OptionalInt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.SessionTokenService;
+
+public class SessionTokenServiceTest {
+    SessionTokenService tokens = new SessionTokenService(new byte[32], 60_000);
+
+    /**
+     * An issued token verifies back to its account.
+     */
+    @Test
+    public void issuedTokenVerifies() {
+        Assert.assertEquals(OptionalInt.of(42), tokens.verify(tokens.issue(42)));
+    }
+
+    /**
+     * Tokens signed with another key, altered, malformed or missing are rejected.
+     */
+    @Test
+    public void forgedOrMalformedTokenIsRejected() {
+        String token = tokens.issue(42);
+        SessionTokenService otherKey = new SessionTokenService(new byte[] {1, 2, 3}, 60_000);
+        Assert.assertFalse(otherKey.verify(token).isPresent());
+        String tampered = tokens.issue(43).substring(0, token.indexOf('.')) + token.substring(token.indexOf('.'));
+        Assert.assertFalse(tokens.verify(tampered).isPresent());
+        Assert.assertFalse(tokens.verify("not-a-token").isPresent());
+        Assert.assertFalse(tokens.verify("!!.??").isPresent());
+        Assert.assertFalse(tokens.verify(null).isPresent());
+    }
+
+    /**
+     * A token is rejected once its lifetime has passed.
+     */
+    @Test
+    public void expiredTokenIsRejected() {
+        SessionTokenService expired = new SessionTokenService(new byte[32], -1);
+        Assert.assertFalse(expired.verify(expired.issue(42)).isPresent());
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import DAO.ShardRebalancer;
+import DAO.ShardedMessageStore;
+import DAO.StorageEngine;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.SequenceIdGenerator;
+
+/**
+ * Checks the sharded message store against three in-memory shard databases.
+ */
+public class ShardedMessageStoreTest {
+    List<ConnectionPool> pools = new ArrayList<>();
+    AccountDAO accounts = new AccountDAO();
+
+    /**
+     * Before every test, reset the database, register accounts 2 to 8 next to the seeded account 1, and
+     * empty the shards.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        for (int i = 2; i <= 8; i++) {
+            accounts.insertAccount(new Account("testuser" + i, "password"));
+        }
+        for (int i = 0; i < 3; i++) {
+            ConnectionPool pool = ConnectionUtil.openPool("jdbc:h2:mem:shard-test-" + i + ";DB_CLOSE_DELAY=-1");
+            try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+            }
+            pools.add(pool);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (ConnectionPool pool : pools) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * An account's messages are on one shard, every ID finds its message, and reads across accounts merge
+     * every shard.
+     */
+    @Test
+    public void routesByPoster() throws Exception {
+        ShardedMessageStore store = open(3);
+        List<Message> inserted = insertForEveryAccount(store, 5);
+        Assert.assertNull(store.insertMessage(new Message(99, "unknown poster", 1669947800L)));
+
+        for (Message message : inserted) {
+            Assert.assertEquals(Optional.of(message), store.getMessageById(message.getMessage_id()));
+        }
+        for (int account = 1; account <= 8; account++) {
+            List<Message> own = store.getMessagesByUserId(account);
+            Assert.assertEquals(5, own.size());
+            Assert.assertEquals(own.subList(2, 5), store.getMessagesByUserId(account, own.get(1).getMessage_id(), 10));
+            int holding = 0;
+            for (ConnectionPool pool : pools) {
+                holding += countByPoster(pool, account) > 0 ? 1 : 0;
+            }
+            Assert.assertEquals(1, holding);
+        }
+
+        List<Message> all = store.getAllMessages();
+        Assert.assertEquals(40, all.size());
+        List<Message> byId = new ArrayList<>(inserted);
+        byId.sort(Comparator.comparingInt(Message::getMessage_id));
+        Assert.assertEquals(byId, all);
+        List<Message> streamed = new ArrayList<>();
+        store.streamAllMessages(7, streamed::add);
+        Assert.assertEquals(all, streamed);
+        Assert.assertEquals(all.subList(3, 10), store.getMessagesAfter(all.get(2).getMessage_id(), 7));
+
+        Message first = inserted.get(0);
+        Assert.assertEquals("edited", store.updateMessageText(first.getMessage_id(), "edited").getMessage_text());
+        Assert.assertTrue(store.deleteMessage(first.getMessage_id()));
+        Assert.assertEquals(Optional.empty(), store.getMessageById(first.getMessage_id()));
+    }
+
+    /**
+     * A shard that cannot be read fails the stream instead of leaving its messages out.
+     */
+    @Test
+    public void streamFailureIsThrown() throws Exception {
+        ShardedMessageStore store = open(3);
+        insertForEveryAccount(store, 2);
+        try (Connection connection = pools.get(1).getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE message");
+        }
+        List<Message> streamed = new ArrayList<>();
+        try {
+            store.streamAllMessages(7, streamed::add);
+            Assert.fail("expected the stream to fail, got " + streamed.size() + " messages");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getCause() instanceof SQLException);
+        }
+    }
+
+    /**
+     * A batch is split over the shards; a row with an unknown poster is null in the result.
+     */
+    @Test
+    public void insertsBatchesAcrossShards() {
+        ShardedMessageStore store = open(3);
+        List<Message> batch = new ArrayList<>();
+        for (int account = 1; account <= 9; account++) {
+            batch.add(new Message(account, "batched " + account, 1669947800L + account));
+        }
+        List<Message> inserted = store.insertMessages(batch);
+        Assert.assertNull(inserted.get(8));
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(batch.get(i).getMessage_text(), inserted.get(i).getMessage_text());
+            Assert.assertEquals(Optional.of(inserted.get(i)), store.getMessageById(inserted.get(i).getMessage_id()));
+        }
+        // newest first by time_posted_epoch
+        Assert.assertEquals(Arrays.asList(inserted.get(7), inserted.get(6)),
+                store.getRecentMessagesByPosters(new Integer[] {1, 2, 3, 4, 5, 6, 7, 8}, 2));
+    }
+
+    /**
+     * A shard's own DAO inserts with IDs that carry the bucket, so the store finds what it wrote.
+     */
+    @Test
+    public void shardDaoInsertsWithBucketIds() {
+        ShardedMessageStore store = open(1);
+        MessageDAO shardDao = new MessageDAO(pools.get(0), new SequenceIdGenerator(pools.get(0), "message_seq", 10));
+        Message inserted = shardDao.insertMessage(new Message(5, "direct", 1669947800L));
+        Assert.assertEquals(ShardedMessageStore.bucketOf(5), inserted.getMessage_id() & (ShardedMessageStore.BUCKETS - 1));
+        Assert.assertEquals(Optional.of(inserted), store.getMessageById(inserted.getMessage_id()));
+        List<Message> batch = shardDao.insertMessages(List.of(new Message(6, "batched", 1669947801L)));
+        Assert.assertEquals(Optional.of(batch.get(0)), store.getMessageById(batch.get(0).getMessage_id()));
+    }
+
+    /**
+     * Going from two shards to three keeps every message under its ID, and new IDs do not collide.
+     */
+    @Test
+    public void rebalanceKeepsIds() throws Exception {
+        ShardedMessageStore before = open(2);
+        List<Message> inserted = insertForEveryAccount(before, 20);
+        // the newest message of every account is deleted, and its ID must not come back on the new shard
+        List<Message> deleted = new ArrayList<>(inserted.subList(inserted.size() - 8, inserted.size()));
+        inserted.removeAll(deleted);
+        for (Message message : deleted) {
+            Assert.assertTrue(before.deleteMessage(message.getMessage_id()));
+        }
+
+        Assert.assertTrue(ShardRebalancer.rebalance(pools, 2, 3) > 0);
+        // a second run finds nothing left to move
+        Assert.assertEquals(0, ShardRebalancer.rebalance(pools, 2, 3));
+
+        ShardedMessageStore after = open(3);
+        for (Message message : inserted) {
+            Assert.assertEquals(Optional.of(message), after.getMessageById(message.getMessage_id()));
+        }
+        Assert.assertEquals(inserted.size(), after.getAllMessages().size());
+        Set<Integer> ids = new HashSet<>();
+        for (Message message : inserted) {
+            ids.add(message.getMessage_id());
+        }
+        for (Message message : deleted) {
+            ids.add(message.getMessage_id());
+        }
+        for (Message message : insertForEveryAccount(after, 20)) {
+            Assert.assertTrue(ids.add(message.getMessage_id()));
+        }
+    }
+
+    /**
+     * Messages of the main database move into the shards once, under IDs carrying their bucket.
+     */
+    @Test
+    public void importsMainDatabase() {
+        MessageDAO main = new MessageDAO();
+        Message seeded = main.getAllMessages().get(0);
+        Message posted = main.insertMessage(new Message(6, "before sharding", 1669947801L));
+
+        Assert.assertEquals(2, ShardRebalancer.importMainDatabase(ConnectionUtil.getPool(), pools));
+        Assert.assertEquals(0, ShardRebalancer.importMainDatabase(ConnectionUtil.getPool(), pools));
+        Assert.assertTrue(main.getAllMessages().isEmpty());
+
+        ShardedMessageStore store = open(3);
+        for (Message message : List.of(seeded, posted)) {
+            int id = (message.getMessage_id() << 6) | ShardedMessageStore.bucketOf(message.getPosted_by());
+            Assert.assertEquals(Optional.of(new Message(id, message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch())), store.getMessageById(id));
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Message message : store.getAllMessages()) {
+            ids.add(message.getMessage_id());
+        }
+        for (Message message : insertForEveryAccount(store, 2)) {
+            Assert.assertTrue(ids.add(message.getMessage_id()));
+        }
+    }
+
+    /**
+     * The sharded engine does not start while the main database has messages it would not read, and starts
+     * once they are imported.
+     */
+    @Test
+    public void engineRefusesUnimportedMessages() {
+        System.setProperty("storage.shards", "3");
+        System.setProperty("storage.shard.url", "jdbc:h2:mem:shard-test-%d;DB_CLOSE_DELAY=-1");
+        try {
+            StorageEngine refused = StorageEngine.create("sharded", null);
+            try {
+                refused.open();
+                Assert.fail("expected the sharded engine to refuse the seeded main database message");
+            } catch (IllegalStateException expected) {
+                Assert.assertTrue(expected.getMessage().contains("ShardRebalancer import"));
+            } finally {
+                refused.close();
+            }
+
+            ShardRebalancer.importMainDatabase(ConnectionUtil.getPool(), pools);
+            StorageEngine started = StorageEngine.create("sharded", null);
+            started.open();
+            Assert.assertEquals(1, started.getMessageStore().getAllMessages().size());
+            started.close();
+        } finally {
+            System.clearProperty("storage.shards");
+            System.clearProperty("storage.shard.url");
+        }
+    }
+
+    private ShardedMessageStore open(int shards) {
+        ShardedMessageStore store = new ShardedMessageStore(pools.subList(0, shards), accounts::accountExists);
+        store.createSchema();
+        return store;
+    }
+
+    private static List<Message> insertForEveryAccount(ShardedMessageStore store, int perAccount) {
+        List<Message> inserted = new ArrayList<>();
+        for (int i = 0; i < perAccount; i++) {
+            for (int account = 1; account <= 8; account++) {
+                Message message = store.insertMessage(new Message(account, "message " + i, 1669947800L + i));
+                Assert.assertNotNull(message);
+                inserted.add(message);
+            }
+        }
+        return inserted;
+    }
+
+    private static int countByPoster(ConnectionPool pool, int postedBy) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select count(*) from message where posted_by = ?")) {
+            statement.setInt(1, postedBy);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
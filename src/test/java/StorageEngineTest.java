@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import DAO.AccountStore;
+import DAO.FollowStore;
+import DAO.MessageStore;
+import DAO.StorageEngine;
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Runs the same checks against every storage engine, so the in-memory stores behave as the database does.
+ */
+@RunWith(Parameterized.class)
+public class StorageEngineTest {
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][] {{"jdbc"}, {"memory"}});
+    }
+
+    private final String engineName;
+    AccountStore accounts;
+    MessageStore messages;
+    FollowStore follows;
+
+    public StorageEngineTest(String engineName) {
+        this.engineName = engineName;
+    }
+
+    /**
+     * Before every test, reset the database and open a new engine, which starts with the seeded
+     * testuser1 (account 1) and message 1.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        StorageEngine engine = StorageEngine.create(engineName, null);
+        engine.open();
+        accounts = engine.getAccountStore();
+        messages = engine.getMessageStore();
+        follows = engine.getFollowStore();
+    }
+
+    /**
+     * Usernames are unique, and new accounts get the next ID.
+     */
+    @Test
+    public void accounts() {
+        Assert.assertEquals(new Account(1, "testuser1", "password"), accounts.getAccountByUsername("testuser1"));
+        Assert.assertNull(accounts.insertAccount(new Account("testuser1", "other")));
+        Account created = accounts.insertAccount(new Account("testuser2", "password2"));
+        Assert.assertTrue(created.getAccount_id() > 1);
+        Assert.assertTrue(accounts.updatePassword(created.getAccount_id(), "changed"));
+        Assert.assertEquals("changed", accounts.getAccountByUsername("testuser2").getPassword());
+        Assert.assertFalse(accounts.updatePassword(99, "changed"));
+        Assert.assertNull(accounts.getAccountByUsername("nobody"));
+    }
+
+    /**
+     * Inserts need an existing poster; reads by ID, author, page, time range and chunk all see them.
+     */
+    @Test
+    public void insertAndRead() throws IOException {
+        Message second = messages.insertMessage(new Message(1, "second", 1669947800L));
+        Message third = messages.insertMessage(new Message(1, "third", 0));
+        Assert.assertNull(messages.insertMessage(new Message(99, "unknown poster", 1669947800L)));
+        Assert.assertEquals(new Message(2, 1, "second", 1669947800L), second);
+        Assert.assertTrue(third.getTime_posted_epoch() > 1669947800L);
+
+        Assert.assertEquals(Optional.of(third), messages.getMessageById(3));
+        Assert.assertEquals(3, messages.getAllMessages().size());
+        Assert.assertEquals(List.of(second, third), messages.getMessagesByUserId(1, 1, 10));
+        Assert.assertEquals(List.of(third, second), messages.getRecentMessagesByPosters(new Integer[] {1}, 2));
+        Assert.assertEquals(2, messages.getMessagesByIds(new Integer[] {1, 3, 42}).size());
+        Assert.assertEquals(List.of(second),
+                messages.getMessagesByTimeRange(1669947793L, 1669947801L, 1669947793L, 0, 10));
+        Assert.assertEquals(List.of(third),
+                messages.getMessagesByTimeRange(0, Long.MAX_VALUE, second.getTime_posted_epoch(), 2, 10));
+        Assert.assertEquals(List.of(second), messages.getMessagesAfter(1, 1));
+        Assert.assertEquals(List.of(third), messages.getMessagesAfter(2, 10));
+    }
+
+    /**
+     * Owner-scoped updates and deletes leave other accounts' messages alone.
+     */
+    @Test
+    public void updateAndDelete() {
+        Assert.assertNull(messages.updateMessageText(1, 2, "not mine"));
+        Assert.assertEquals("updated", messages.updateMessageText(1, 1, "updated").getMessage_text());
+        Assert.assertFalse(messages.deleteAndReturnMessage(1, 2).isPresent());
+        Assert.assertEquals("updated", messages.deleteAndReturnMessage(1).get().getMessage_text());
+        Assert.assertFalse(messages.getMessageById(1).isPresent());
+        Assert.assertTrue(messages.getMessagesByUserId(1).isEmpty());
+        Assert.assertFalse(messages.deleteMessage(1));
+    }
+
+    /**
+     * Follows need both accounts to exist, and unfollowing reports whether anything was removed.
+     */
+    @Test
+    public void followAndUnfollow() {
+        Account second = accounts.insertAccount(new Account("testuser2", "password2"));
+        Assert.assertFalse(follows.follow(second.getAccount_id(), 99));
+        Assert.assertTrue(follows.follow(second.getAccount_id(), 1));
+        Assert.assertTrue(follows.follow(second.getAccount_id(), 1));
+        Assert.assertEquals(List.of(new Follow(second.getAccount_id(), 1)), follows.getAllFollows());
+        Assert.assertTrue(follows.unfollow(second.getAccount_id(), 1));
+        Assert.assertFalse(follows.unfollow(second.getAccount_id(), 1));
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. A second account, testuser2 (account 2), is registered.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser2\", " +
+                        "\"password\": \"password2\" }"))
+                .header("Content-Type", "application/json")
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Message> timeline(int accountId) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + accountId + "/timeline"))
+                .build());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private void post(int postedBy, String text) throws IOException, InterruptedException {
+        post(postedBy, text, 1669947792L);
+    }
+
+    private void post(int postedBy, String text, long timePosted) throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + postedBy + ", " +
+                        "\"message_text\": \"" + text + "\", " +
+                        "\"time_posted_epoch\": " + timePosted + "}"))
+                .header("Content-Type", "application/json")
+                .build());
+    }
+
+    /**
+     * Account 2 reads its timeline, follows account 1, reads it again, and then account 1 posts
+     *
+     * Expected Response:
+     *  Before following: empty; after: account 1's message; after the new post: both, newest first
+     */
+    @Test
+    public void timelineShowsFollowedAccounts() throws IOException, InterruptedException {
+        Assert.assertTrue(timeline(2).isEmpty());
+
+        HttpResponse<String> followResponse = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/following/1"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build());
+        Assert.assertEquals(200, followResponse.statusCode());
+        Assert.assertEquals("[2]", send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/followers")).build()).body());
+
+        List<Message> afterFollow = timeline(2);
+        Assert.assertEquals(1, afterFollow.size());
+        Assert.assertEquals(1, afterFollow.get(0).getMessage_id());
+
+        post(1, "fanned out message");
+        List<Message> afterPost = timeline(2);
+        Assert.assertEquals(2, afterPost.size());
+        Assert.assertEquals("fanned out message", afterPost.get(0).getMessage_text());
+        Assert.assertEquals(1, afterPost.get(1).getMessage_id());
+    }
+
+    /**
+     * Account 2 follows account 1 and reads its timeline, then account 1 posts a message and, after it, one
+     * dated earlier
+     *
+     * Expected Response:
+     *  The timeline ordered by time_posted_epoch, not by message_id
+     */
+    @Test
+    public void timelineIsOrderedByTimePosted() throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/following/1"))
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build());
+        Assert.assertEquals(1, timeline(2).size());
+
+        post(1, "later", 1669947900L);
+        post(1, "earlier", 1669947850L);
+        List<Message> messages = timeline(2);
+        Assert.assertEquals(3, messages.size());
+        Assert.assertEquals("later", messages.get(0).getMessage_text());
+        Assert.assertEquals("earlier", messages.get(1).getMessage_text());
+        Assert.assertEquals(1, messages.get(2).getMessage_id());
+    }
+
+    /**
+     * Account 2 tries to follow itself and an account that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followSelfOrUnknownIsRejected() throws IOException, InterruptedException {
+        for (String path : new String[] {"/accounts/2/following/2", "/accounts/2/following/99"}) {
+            HttpResponse<String> response = send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080" + path))
+                    .PUT(HttpRequest.BodyPublishers.noBody())
+                    .build());
+            Assert.assertEquals(400, response.statusCode());
+        }
+    }
+
+    /**
+     * Sending an http request to GET the timeline of an account that does not exist, and of a non-numeric ID
+     *
+     * Expected Response:
+     *  Status Code: 404 for the unknown account, 400 for the malformed ID
+     */
+    @Test
+    public void timelineOfUnknownAccountIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(404, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/99/timeline")).build()).statusCode());
+        Assert.assertEquals(400, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/abc/timeline")).build()).statusCode());
+    }
+}
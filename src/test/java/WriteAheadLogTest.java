@@ -0,0 +1,112 @@
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Optional;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.StorageEngine;
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Checks that a memory engine with a write-ahead log comes back with the same state after a restart.
+ */
+public class WriteAheadLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    Path directory;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        directory = folder.getRoot().toPath();
+    }
+
+    /**
+     * Writes made before and after a snapshot are all recovered, and recovery does not read the database.
+     */
+    @Test
+    public void recoversSnapshotAndLogTail() throws Exception {
+        StorageEngine engine = open();
+        Account second = engine.getAccountStore().insertAccount(new Account("testuser2", "password2"));
+        Message kept = engine.getMessageStore().insertMessage(new Message(1, "kept", 1669947800L));
+        Message deleted = engine.getMessageStore().insertMessage(new Message(1, "deleted", 1669947801L));
+        engine.getWriteAheadLog().snapshot();
+
+        engine.getMessageStore().updateMessageText(kept.getMessage_id(), "edited");
+        engine.getMessageStore().deleteMessage(deleted.getMessage_id());
+        engine.getAccountStore().updatePassword(second.getAccount_id(), "changed");
+        engine.getFollowStore().follow(1, second.getAccount_id());
+        engine.close();
+
+        ConnectionUtil.resetTestDatabase();
+        StorageEngine reopened = open();
+        Assert.assertEquals(new Account(second.getAccount_id(), "testuser2", "changed"),
+                reopened.getAccountStore().getAccountByUsername("testuser2"));
+        Assert.assertEquals(Optional.of(new Message(kept.getMessage_id(), 1, "edited", 1669947800L)),
+                reopened.getMessageStore().getMessageById(kept.getMessage_id()));
+        Assert.assertEquals(Optional.empty(), reopened.getMessageStore().getMessageById(deleted.getMessage_id()));
+        Assert.assertEquals(2, reopened.getMessageStore().getAllMessages().size());
+        Assert.assertTrue(reopened.getFollowStore().getAllFollows().contains(new Follow(1, second.getAccount_id())));
+
+        // the deleted message's ID is not handed out again
+        Message next = reopened.getMessageStore().insertMessage(new Message(1, "next", 1669947802L));
+        Assert.assertTrue(next.getMessage_id() > deleted.getMessage_id());
+        reopened.close();
+    }
+
+    /**
+     * The first open loads the database and snapshots it, so seeded rows survive without any writes.
+     */
+    @Test
+    public void firstOpenSnapshotsDatabase() throws Exception {
+        open().close();
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from message");
+        }
+        StorageEngine reopened = open();
+        Assert.assertEquals(1, reopened.getMessageStore().getAllMessages().size());
+        Assert.assertNotNull(reopened.getAccountStore().getAccountByUsername("testuser1"));
+        reopened.close();
+    }
+
+    /**
+     * Without a write-ahead log directory the memory engine only starts when told its writes may be lost.
+     */
+    @Test
+    public void memoryEngineNeedsLogOrVolatile() {
+        String configured = System.getProperty("storage.memory.volatile");
+        try {
+            System.clearProperty("storage.memory.volatile");
+            try {
+                StorageEngine.create("memory");
+                Assert.fail("expected the memory engine to need storage.wal.dir");
+            } catch (IllegalArgumentException expected) {
+                Assert.assertTrue(expected.getMessage().contains("storage.memory.volatile"));
+            }
+            System.setProperty("storage.memory.volatile", "true");
+            Assert.assertNull(StorageEngine.create("memory").getWriteAheadLog());
+        } finally {
+            if (configured == null) {
+                System.clearProperty("storage.memory.volatile");
+            } else {
+                System.setProperty("storage.memory.volatile", configured);
+            }
+        }
+    }
+
+    private StorageEngine open() {
+        StorageEngine engine = StorageEngine.create("memory", directory);
+        engine.open();
+        return engine;
+    }
+}